@@ -0,0 +1,61 @@
+package org.forever.demo.benchmarks;
+
+import org.forever.demo.ActTable;
+import org.forever.demo.ComparisonSettings;
+import org.forever.demo.ExcelComparator;
+import org.forever.demo.ParserEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор пары актов (parseFiles) целиком: определение формата, чтение книги и разбор строк.
+ * Кэш разбора выключен, иначе со второй итерации измерялось бы только чтение кэша.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ParseBenchmark {
+
+    @Param({"DEBIT_CREDIT", "AIS", "PRIHOD_RASHOD"})
+    public SyntheticWorkbooks.ActKind kind;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"DOM", "STREAMING"})
+    public ParserEngine engine;
+
+    private File dir;
+    private File[] files;
+    private ComparisonSettings settings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("demo-bench").toFile();
+        files = SyntheticWorkbooks.writeActPair(dir, kind, rows, 42);
+        settings = new ComparisonSettings(false, false);
+        settings.setParserEngine(engine);
+        settings.setParseCache(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public Map<String, ActTable> parseFiles() {
+        return ExcelComparator.parseFiles(files, settings);
+    }
+}
@@ -0,0 +1,66 @@
+package org.forever.demo.benchmarks;
+
+import org.forever.demo.ExcelComparator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нечеткое сопоставление товаров накладных: compareMegaMapData целиком,
+ * а также его составные части - нормализация наименований и расстояние Левенштейна
+ * (полное и с порогом, как при сопоставлении).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProductMatchingBenchmark {
+
+    // Порог расстояния, с которым сопоставляются накладные
+    private static final int MAX_DISTANCE = 2;
+
+    @Param({"1000", "10000"})
+    public int products;
+
+    private Map<String, Map<String, List<List<String>>>> megaMap;
+    private List<String> names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        megaMap = SyntheticWorkbooks.productPair(products, 42);
+        names = SyntheticWorkbooks.productNames(products, 43);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<String, List<List<String>>> compareMegaMapData() {
+        return ExcelComparator.compareMegaMapData(megaMap, MAX_DISTANCE);
+    }
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(ExcelComparator.normalize(name));
+        }
+    }
+
+    // Соседние наименования списка: похожие начала, разные хвосты
+    @Benchmark
+    public void levenshteinDistance(Blackhole blackhole) {
+        for (int i = 1; i < names.size(); i++) {
+            blackhole.consume(ExcelComparator.levenshteinDistance(names.get(i - 1), names.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void levenshteinDistanceBounded(Blackhole blackhole) {
+        for (int i = 1; i < names.size(); i++) {
+            blackhole.consume(ExcelComparator.levenshteinDistance(names.get(i - 1), names.get(i), MAX_DISTANCE));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.forever.demo.benchmarks;
+
+import org.forever.demo.ActTable;
+import org.forever.demo.ComparisonResult;
+import org.forever.demo.ComparisonSettings;
+import org.forever.demo.ExcelComparator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сверка уже разобранных актов (compareDataInMegaMap) - без чтения файлов.
+ * Акты разбираются один раз при подготовке; во втором акте около процента сумм отличается.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ReconciliationBenchmark {
+
+    @Param({"DEBIT_CREDIT", "AIS", "PRIHOD_RASHOD"})
+    public SyntheticWorkbooks.ActKind kind;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private Map<String, ActTable> megaMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File dir = Files.createTempDirectory("demo-bench").toFile();
+        File[] files = SyntheticWorkbooks.writeActPair(dir, kind, rows, 42);
+        ComparisonSettings settings = new ComparisonSettings(false, false);
+        settings.setParseCache(null);
+        megaMap = ExcelComparator.parseFiles(files, settings);
+        for (File file : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public ComparisonResult compareDataInMegaMap() {
+        return ExcelComparator.compareDataInMegaMap(megaMap, false, false);
+    }
+}
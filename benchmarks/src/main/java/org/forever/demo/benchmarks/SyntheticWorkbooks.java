@@ -0,0 +1,185 @@
+package org.forever.demo.benchmarks;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.forever.demo.ProductNameNormalizer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Генератор синтетических актов сверки и накладных для бенчмарков.
+ * Структура листа повторяет реальные выгрузки: шапка с контрагентом, строка заголовков,
+ * строки с датами (часть - датой Excel, часть - текстом), документами и суммами, итоговая строка.
+ * Все значения получаются из Random с заданным зерном, поэтому одинаковые параметры
+ * всегда дают одинаковые файлы.
+ */
+public final class SyntheticWorkbooks {
+
+    // Формат акта - определяет заголовки колонок, по которым парсер выбирает разбор
+    public enum ActKind {
+        DEBIT_CREDIT("№", "Дата", "Документ", "Дебет", "Кредит", "Сальдо"),
+        AIS("Дата", "Документ", "Дт", "Кт"),
+        PRIHOD_RASHOD("№", "Дата", "Документ", "Приход", "Расход");
+
+        private final String[] headers;
+
+        ActKind(String... headers) {
+            this.headers = headers;
+        }
+    }
+
+    private static final String[] PRODUCTS = {
+            "Крем NIVEA creme", "Шампунь інтенс зволоження", "Мило ніжність", "Гель для душу з розпилювачем",
+            "Паста зубна відбілююча", "Дезодорант спрей", "Бальзам для волосся", "Пральний порошок автомат"};
+    private static final String[] UNITS = {"мл", "г", "шт", "кг"};
+
+    // Во втором файле примерно каждая MISMATCH_EVERY-я сумма отличается от первого
+    private static final int MISMATCH_EVERY = 100;
+
+    private SyntheticWorkbooks() {
+    }
+
+    /**
+     * Пара актов для сверки: второй повторяет первый, но примерно в каждой сотой строке сумма другая.
+     *
+     * @return два файла XLSX в папке dir
+     */
+    public static File[] writeActPair(File dir, ActKind kind, int rows, long seed) throws IOException {
+        File first = new File(dir, kind.name().toLowerCase() + "-" + rows + "-1.xlsx");
+        File second = new File(dir, kind.name().toLowerCase() + "-" + rows + "-2.xlsx");
+        writeAct(first, kind, rows, seed, false);
+        writeAct(second, kind, rows, seed, true);
+        return new File[]{first, second};
+    }
+
+    /**
+     * Один акт. Книга пишется через SXSSF, так что в памяти держится только окно строк
+     * и акты на сотни тысяч строк генерируются без большой кучи.
+     */
+    public static void writeAct(File file, ActKind kind, int rows, long seed, boolean withMismatches) throws IOException {
+        Random random = new Random(seed);
+        Random mismatches = new Random(seed + 1);
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000);
+             OutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = workbook.createSheet("Акт");
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("dd.mm.yyyy"));
+
+            int rowNum = 0;
+            sheet.createRow(rowNum++).createCell(0).setCellValue("АКТ ЗВІРКИ");
+            sheet.createRow(rowNum++).createCell(0)
+                    .setCellValue("взаємних розрахунків між ТОВ \"СМК ГРУП\" і ТОВ \"Ромашка\"");
+            rowNum++;
+            Row header = sheet.createRow(rowNum++);
+            for (int i = 0; i < kind.headers.length; i++) {
+                header.createCell(i).setCellValue(kind.headers[i]);
+            }
+
+            Calendar date = new GregorianCalendar(2020, Calendar.JANUARY, 1);
+            for (int i = 0; i < rows; i++) {
+                // Несколько документов в день, даты идут по возрастанию
+                if (i % 7 == 0) {
+                    date.add(Calendar.DAY_OF_MONTH, 1);
+                }
+                double amount = Math.round(random.nextDouble() * 100000) / 100.0;
+                if (withMismatches && mismatches.nextInt(MISMATCH_EVERY) == 0) {
+                    amount += 1;
+                }
+                Row row = sheet.createRow(rowNum++);
+                String dateText = String.format("%02d.%02d.%d", date.get(Calendar.DAY_OF_MONTH),
+                        date.get(Calendar.MONTH) + 1, date.get(Calendar.YEAR));
+                switch (kind) {
+                    case DEBIT_CREDIT, PRIHOD_RASHOD -> {
+                        row.createCell(0).setCellValue(i + 1);
+                        Cell dateCell = row.createCell(1);
+                        if (random.nextBoolean()) {
+                            dateCell.setCellValue(date.getTime());
+                            dateCell.setCellStyle(dateStyle);
+                        } else {
+                            dateCell.setCellValue(dateText);
+                        }
+                        row.createCell(2).setCellValue("Накладна " + random.nextInt(1000) + " від " + dateText);
+                        // Суммы бывают и числом, и текстом с запятой
+                        if (random.nextBoolean()) {
+                            row.createCell(3).setCellValue(amount);
+                        } else {
+                            row.createCell(4).setCellValue(String.valueOf(amount).replace('.', ','));
+                        }
+                        if (kind == ActKind.DEBIT_CREDIT) {
+                            row.createCell(5).setCellValue(random.nextInt(100000));
+                        }
+                    }
+                    case AIS -> {
+                        Cell dateCell = row.createCell(0);
+                        dateCell.setCellValue(date.getTime());
+                        dateCell.setCellStyle(dateStyle);
+                        row.createCell(1).setCellValue("Оплата " + random.nextInt(1000));
+                        boolean debit = random.nextBoolean();
+                        row.createCell(2).setCellValue(debit ? amount : 0);
+                        row.createCell(3).setCellValue(debit ? 0 : amount);
+                    }
+                }
+            }
+            sheet.createRow(rowNum).createCell(1).setCellValue("Обороти разом");
+
+            workbook.write(out);
+        }
+    }
+
+    /**
+     * Товары двух накладных в виде, который получает compareMegaMapData: нормализованное
+     * наименование -> строки с суммой. Во второй накладной часть наименований записана
+     * с небольшими отличиями (пропущенная буква, другой регистр, лишняя точка),
+     * чтобы сопоставление шло через расстояние Левенштейна; примерно у каждого сотого товара сумма другая.
+     */
+    public static Map<String, Map<String, List<List<String>>>> productPair(int products, long seed) {
+        Random random = new Random(seed);
+        Random mismatches = new Random(seed + 1);
+        ProductNameNormalizer normalizer = new ProductNameNormalizer();
+        Map<String, List<List<String>>> first = new HashMap<>();
+        Map<String, List<List<String>>> second = new HashMap<>();
+        for (int i = 0; i < products; i++) {
+            String name = productName(i, random);
+            double sum = Math.round(random.nextDouble() * 100000) / 100.0;
+            double otherSum = mismatches.nextInt(MISMATCH_EVERY) == 0 ? sum + 1 : sum;
+            first.computeIfAbsent(normalizer.normalize(name), _ -> new ArrayList<>()).add(List.of(String.valueOf(sum)));
+            second.computeIfAbsent(normalizer.normalize(typo(name, random)), _ -> new ArrayList<>())
+                    .add(List.of(String.valueOf(otherSum)));
+        }
+        Map<String, Map<String, List<List<String>>>> megaMap = new LinkedHashMap<>();
+        megaMap.put("накладна-1.xlsx", first);
+        megaMap.put("накладна-2.xlsx", second);
+        return megaMap;
+    }
+
+    // Наименования товаров в том виде, в каком они приходят в накладных
+    public static List<String> productNames(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(random.nextBoolean() ? productName(i, random) : typo(productName(i, random), random));
+        }
+        return names;
+    }
+
+    private static String productName(int i, Random random) {
+        return PRODUCTS[i % PRODUCTS.length] + " " + (50 + random.nextInt(950)) + " " + UNITS[random.nextInt(UNITS.length)]
+                + " арт " + i;
+    }
+
+    private static String typo(String name, Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> {
+                int at = 1 + random.nextInt(name.length() - 2);
+                yield name.substring(0, at) + name.substring(at + 1);
+            }
+            case 1 -> name.toUpperCase();
+            case 2 -> name + ".";
+            default -> name;
+        };
+    }
+}
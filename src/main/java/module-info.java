@@ -19,6 +19,7 @@ module org.forever.demo {
     requires javafx.controls;
     requires java.logging;
     requires java.net.http;
+    requires java.xml;
 
     exports org.forever.demo;
     opens org.forever.demo to javafx.fxml, org.apache.commons.compress;
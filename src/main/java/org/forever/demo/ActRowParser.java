@@ -0,0 +1,434 @@
+package org.forever.demo;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Потоковый разбор акта сверки по строкам первого листа.
+ * Повторяет логику processWorkbook и парсеров Дебет/Кредит, Приход/Расход и Дт/Кт из ExcelComparator,
+ * но получает строки по одной, поэтому книгу не нужно целиком держать в памяти.
+ * Заодно ищет наименование контрагента, чтобы файл читался за один проход.
+ */
+public class ActRowParser implements SheetRowSink {
+
+    private enum ActType {DEBIT_CREDIT, PRIHOD_RASHOD, PRIHOD_RASHOD_WITH_BALANCE, AIS}
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2,4}");
+    private static final Pattern FULL_DATE_PATTERN = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{4}");
+
+    // Пока тип файла не определен, строки получают все парсеры (каждый ищет свои заголовки с начала листа,
+    // как это делают DOM-парсеры). После определения типа остается только подходящий.
+    private final Map<ActType, TypeParser> candidates = new EnumMap<>(ActType.class);
+    private final CounterpartySearch counterpartySearch = new CounterpartySearch();
+    private ActType type;
+    private boolean parsingFinished;
+    private ActTable fileData;
+    private final String fileName;
+    private final ParseDiagnostics diagnostics = new ParseDiagnostics();
+
+    /**
+     * @param fileName Имя файла для замечаний о пропущенных строках
+     */
+    public ActRowParser(String fileName) {
+        this.fileName = fileName;
+        candidates.put(ActType.DEBIT_CREDIT, new DebitCreditParser("дебет", "кредит", true));
+        candidates.put(ActType.PRIHOD_RASHOD, new DebitCreditParser("приход", "расход", false));
+        candidates.put(ActType.PRIHOD_RASHOD_WITH_BALANCE, new PrihodRashodParser());
+        candidates.put(ActType.AIS, new AisParser());
+    }
+
+    @Override
+    public boolean acceptRow(SheetRow row) {
+        counterpartySearch.accept(row);
+
+        if (!parsingFinished) {
+            if (type == null) {
+                for (TypeParser parser : candidates.values()) {
+                    parser.accept(row);
+                }
+                type = detectType(row);
+                if (type != null) {
+                    candidates.keySet().retainAll(Set.of(type));
+                }
+            } else {
+                parsingFinished = !candidates.get(type).accept(row);
+            }
+        }
+
+        // Читать дальше нужно, пока не закончилась таблица или не найден контрагент
+        return !(parsingFinished && counterpartySearch.isFinished());
+    }
+
+    // Та же проверка заголовков, что и в processWorkbook
+    private static ActType detectType(SheetRow row) {
+        boolean containsDebit = false;
+        boolean containsCredit = false;
+        boolean containsPrihod = false;
+        boolean containsRashod = false;
+        boolean containsDT = false;
+        boolean containsKT = false;
+        boolean containsNachOstatok = false;
+
+        for (SheetRow.Cell cell : row.cells()) {
+            String value = cell.value();
+            if (value.equalsIgnoreCase("Дебет")) containsDebit = true;
+            if (value.equalsIgnoreCase("Кредит")) containsCredit = true;
+            if (value.equalsIgnoreCase("Приход")) containsPrihod = true;
+            if (value.equalsIgnoreCase("Расход")) containsRashod = true;
+            if (value.equalsIgnoreCase("дт")) containsDT = true;
+            if (value.equalsIgnoreCase("кт")) containsKT = true;
+            if (value.contains("нач. остаток") || value.contains("кон. остаток")) {
+                containsNachOstatok = true;
+            }
+        }
+
+        if (containsDebit && containsCredit) {
+            return ActType.DEBIT_CREDIT;
+        }
+        if (containsPrihod && containsRashod) {
+            return containsNachOstatok ? ActType.PRIHOD_RASHOD_WITH_BALANCE : ActType.PRIHOD_RASHOD;
+        }
+        if (containsDT && containsKT) {
+            return ActType.AIS;
+        }
+        return null;
+    }
+
+    // false, если заголовки не найдены и файл требует специального парсинга
+    public boolean isRecognized() {
+        return type != null;
+    }
+
+    public ActTable getFileData() {
+        if (type == null) {
+            return ActTable.empty();
+        }
+        if (fileData == null) {
+            fileData = candidates.get(type).result().build();
+        }
+        return fileData;
+    }
+
+    // null, если контрагент не найден
+    public String getCounterpartyName() {
+        return counterpartySearch.result();
+    }
+
+    // Замечания, накопленные при чтении листа
+    public ParseDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    private void skippedRow(String cause) {
+        diagnostics.skippedRow(fileName, cause);
+    }
+
+    private static boolean containsSummary(SheetRow row) {
+        for (SheetRow.Cell cell : row.cells()) {
+            if (ExcelComparator.isSummaryValue(cell.value().toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String findDateKey(List<String> rowData) {
+        for (String cellValue : rowData) {
+            Matcher m = DATE_PATTERN.matcher(cellValue);
+            if (m.find()) {
+                return ExcelComparator.convertToFullYear(m.group());
+            }
+        }
+        return null;
+    }
+
+    private interface TypeParser {
+        // false - таблица закончилась, дальнейшие строки не нужны
+        boolean accept(SheetRow row);
+
+        ActTable.Builder result();
+    }
+
+    /**
+     * parseDebitCreditFile и parsePrihodRashodAsDebitCredit: таблица идет сразу за строкой заголовков
+     * и заканчивается на первой пустой (или отсутствующей) строке либо на итоговой строке.
+     */
+    private final class DebitCreditParser implements TypeParser {
+        private final String firstHeader;
+        private final String secondHeader;
+        private final boolean skipSaldo;
+        private final ActTable.Builder fileData = new ActTable.Builder();
+        private int saldoColumnIndex = -1;
+        private int expectedRowNum = -1; // -1, пока заголовок не найден
+
+        DebitCreditParser(String firstHeader, String secondHeader, boolean skipSaldo) {
+            this.firstHeader = firstHeader;
+            this.secondHeader = secondHeader;
+            this.skipSaldo = skipSaldo;
+        }
+
+        @Override
+        public boolean accept(SheetRow row) {
+            if (expectedRowNum < 0) {
+                boolean containsFirst = false;
+                boolean containsSecond = false;
+                for (SheetRow.Cell cell : row.cells()) {
+                    String value = cell.value().toLowerCase();
+                    if (value.equals(firstHeader)) containsFirst = true;
+                    if (value.equals(secondHeader)) containsSecond = true;
+                    if (skipSaldo && value.equals("сальдо")) saldoColumnIndex = cell.column();
+                }
+                if (containsFirst && containsSecond) {
+                    expectedRowNum = row.rowNum() + 1;
+                }
+                return true;
+            }
+
+            // Пропущенная строка листа (sheet.getRow(i) == null) тоже заканчивает таблицу
+            if (row.rowNum() != expectedRowNum || row.isEmpty() || containsSummary(row)) {
+                return false;
+            }
+            expectedRowNum++;
+
+            List<String> rowData = new ArrayList<>();
+            for (SheetRow.Cell cell : row.cells()) {
+                if (cell.column() == saldoColumnIndex) {
+                    continue;
+                }
+                if (!cell.value().isEmpty()) {
+                    rowData.add(cell.value());
+                }
+            }
+
+            if (rowData.isEmpty()) return true;
+
+            // Если первый элемент - это порядковый номер, и есть другие данные, удаляем его.
+            if (rowData.size() > 1 && ExcelComparator.isSequentialNumber(rowData.getFirst())) {
+                rowData.removeFirst();
+            }
+
+            String dateKey = findDateKey(rowData);
+            if (dateKey != null) {
+                fileData.add(dateKey, rowData);
+            } else {
+                skippedRow(ExcelComparator.NO_DATE);
+            }
+            return true;
+        }
+
+        @Override
+        public ActTable.Builder result() {
+            return fileData;
+        }
+    }
+
+    /**
+     * parseAiS: пустые строки пропускаются, таблица заканчивается на "Разом"/"Обороты",
+     * нулевые суммы отбрасываются, строки "Сальдо на ..." привязываются к своей дате.
+     */
+    private final class AisParser implements TypeParser {
+        private final ActTable.Builder fileData = new ActTable.Builder();
+        private boolean headerFound;
+
+        @Override
+        public boolean accept(SheetRow row) {
+            if (!headerFound) {
+                boolean hasDt = false;
+                boolean hasKt = false;
+                for (SheetRow.Cell cell : row.cells()) {
+                    String value = cell.value().toLowerCase();
+                    if (value.equals("дт")) hasDt = true;
+                    if (value.equals("кт")) hasKt = true;
+                }
+                headerFound = hasDt && hasKt;
+                return true;
+            }
+
+            if (row.isEmpty()) {
+                return true;
+            }
+
+            for (SheetRow.Cell cell : row.cells()) {
+                String value = cell.value().toLowerCase();
+                if (value.contains("разом") || value.contains("оборот")) {
+                    return false;
+                }
+            }
+
+            List<String> rowData = new ArrayList<>();
+            for (SheetRow.Cell cell : row.cells()) {
+                String value = cell.value();
+                if (!value.isEmpty()) {
+                    if (ExcelComparator.isNumeric(value)) {
+                        if (ExcelComparator.isNonZeroNumeric(value)) {
+                            rowData.add(value);
+                        }
+                    } else {
+                        rowData.add(value);
+                    }
+                }
+            }
+
+            if (rowData.isEmpty()) return true;
+
+            String dateKey = findDateKey(rowData);
+
+            if (rowData.getFirst().toLowerCase().contains("сальдо на")) {
+                Matcher m = DATE_PATTERN.matcher(rowData.getFirst());
+                if (m.find()) {
+                    dateKey = ExcelComparator.convertToFullYear(m.group());
+                }
+            }
+
+            if (dateKey != null) {
+                fileData.add(dateKey, rowData);
+            } else {
+                skippedRow(ExcelComparator.NO_DATE);
+            }
+            return true;
+        }
+
+        @Override
+        public ActTable.Builder result() {
+            return fileData;
+        }
+    }
+
+    /**
+     * parsePrihodRashodFile: старый формат с колонками остатков, дата берется из колонки "Период"/"Договор".
+     */
+    private final class PrihodRashodParser implements TypeParser {
+        private final ActTable.Builder fileData = new ActTable.Builder();
+        private int nachOstatokIndex = -1;
+        private int konOstatokIndex = -1;
+        private int prichodIndex = -1;
+        private int rashodIndex = -1;
+        private int dateIndex = -1;
+        private boolean headerFound;
+
+        @Override
+        public boolean accept(SheetRow row) {
+            if (!headerFound) {
+                for (SheetRow.Cell cell : row.cells()) {
+                    String value = cell.value().toLowerCase();
+                    if (value.contains("нач. остаток")) nachOstatokIndex = cell.column();
+                    if (value.contains("кон. остаток")) konOstatokIndex = cell.column();
+                    if (value.equals("приход")) prichodIndex = cell.column();
+                    if (value.equals("расход")) rashodIndex = cell.column();
+                    if (value.contains("период") || value.contains("договор")) dateIndex = cell.column();
+                }
+                headerFound = prichodIndex != -1 && rashodIndex != -1 && dateIndex != -1;
+                return true;
+            }
+
+            if (row.isEmpty() || containsSummary(row)) {
+                return true;
+            }
+
+            if (ExcelComparator.isNumeric(row.valueAt(prichodIndex)) || ExcelComparator.isNumeric(row.valueAt(rashodIndex))) {
+                Matcher m = FULL_DATE_PATTERN.matcher(row.valueAt(dateIndex));
+                if (m.find()) {
+                    List<String> rowData = new ArrayList<>();
+                    for (SheetRow.Cell cell : row.cells()) {
+                        if (cell.column() == nachOstatokIndex || cell.column() == konOstatokIndex) {
+                            continue;
+                        }
+                        if (!cell.value().isEmpty()) {
+                            rowData.add(cell.value());
+                        }
+                    }
+                    if (!rowData.isEmpty()) {
+                        fileData.add(m.group(), rowData);
+                    }
+                } else {
+                    skippedRow(ExcelComparator.NO_PERIOD_DATE);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ActTable.Builder result() {
+            return fileData;
+        }
+    }
+
+    /**
+     * Поиск контрагента как в findNameInSheet: тип документа определяется по первым 25 строкам,
+     * а имя берется из первой подходящей ячейки всего листа.
+     */
+    private static final class CounterpartySearch {
+        private static final int MARKER_ROWS = 25;
+
+        private enum Marker {NONE, AKT, NAKLADNA}
+
+        private Marker marker = Marker.NONE;
+        private boolean markerSearchDone;
+        private boolean aktSearchDone;
+        private boolean nakladnaSearchDone;
+        private String aktName;
+        private String nakladnaName;
+
+        void accept(SheetRow row) {
+            if (!markerSearchDone) {
+                if (row.rowNum() >= MARKER_ROWS) {
+                    markerSearchDone = true;
+                } else {
+                    for (SheetRow.Cell cell : row.cells()) {
+                        if (cell.value().contains("АКТ ЗВІРКИ")) {
+                            marker = Marker.AKT;
+                        } else if (cell.value().contains("Прибуткова накладна")) {
+                            marker = Marker.NAKLADNA;
+                        }
+                        if (marker != Marker.NONE) {
+                            markerSearchDone = true;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            if (!aktSearchDone) {
+                for (SheetRow.Cell cell : row.cells()) {
+                    String cellValue = cell.value();
+                    if (cellValue.contains("СМК ГРУП") && (cellValue.contains(" і ") || cellValue.contains(" та ") || cellValue.contains(" и "))) {
+                        String[] parts = cellValue.split("\\s+(і|та|и)\\s+", 2);
+                        if (parts.length == 2) {
+                            String potentialName = parts[0].contains("СМК ГРУП") ? parts[1] : parts[0];
+                            aktName = ExcelComparator.finalizeCounterpartyName(potentialName);
+                            aktSearchDone = true;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            if (!nakladnaSearchDone) {
+                for (SheetRow.Cell cell : row.cells()) {
+                    if (cell.value().contains("Постачальник:") && row.hasCell(cell.column() + 1)) {
+                        nakladnaName = ExcelComparator.finalizeCounterpartyName(row.valueAt(cell.column() + 1));
+                        nakladnaSearchDone = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean isFinished() {
+            return switch (marker) {
+                case NONE -> markerSearchDone;
+                case AKT -> aktSearchDone;
+                case NAKLADNA -> nakladnaSearchDone;
+            };
+        }
+
+        String result() {
+            return switch (marker) {
+                case NONE -> null;
+                case AKT -> aktName;
+                case NAKLADNA -> nakladnaName;
+            };
+        }
+    }
+}
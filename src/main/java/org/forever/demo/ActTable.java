@@ -0,0 +1,261 @@
+package org.forever.demo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.*;
+
+/**
+ * Разобранные строки одного файла (акта сверки или списка товаров накладных).
+ * Ячейки всех строк хранятся подряд в общих массивах: текст ячейки и, если ячейка числовая,
+ * ее значение в копейках. Числа разбираются один раз при построении таблицы,
+ * сравнение дальше работает только с long. Строки сгруппированы по ключу (дате или товару)
+ * и внутри группы идут в порядке файла.
+ */
+public final class ActTable {
+
+    // Значение в amounts для нечисловой ячейки
+    public static final long NOT_AMOUNT = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("dd.MM.uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    private static final ActTable EMPTY = new Builder().build();
+
+    // Хронологический порядок групп: по дате, группы без корректной даты - в конце по ключу
+    public static final Comparator<Group> CHRONOLOGICAL = Comparator
+            .comparing(Group::date, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Group::key);
+
+    /**
+     * Строки с одним ключом.
+     *
+     * @param key  Ключ группы: дата "dd.MM.yyyy" или наименование товара
+     * @param date Ключ как дата или null, если ключ не является корректной датой
+     * @param rows Номера строк таблицы по возрастанию
+     */
+    public record Group(String key, LocalDate date, int[] rows) {
+    }
+
+    private final String[] texts;
+    private final long[] amounts;
+    // Ячейки строки i занимают позиции rowStarts[i] .. rowStarts[i + 1] - 1
+    private final int[] rowStarts;
+    private final Map<String, Group> groups;
+
+    private ActTable(String[] texts, long[] amounts, int[] rowStarts, Map<String, Group> groups) {
+        this.texts = texts;
+        this.amounts = amounts;
+        this.rowStarts = rowStarts;
+        this.groups = groups;
+    }
+
+    public static ActTable empty() {
+        return EMPTY;
+    }
+
+    // Таблица из сгруппированных строк (используется для результата сопоставления товаров)
+    public static ActTable of(Map<String, List<List<String>>> data) {
+        Builder builder = new Builder();
+        data.forEach((key, rows) -> rows.forEach(row -> builder.add(key, row)));
+        return builder.build();
+    }
+
+    public boolean isEmpty() {
+        return groups.isEmpty();
+    }
+
+    // Количество ключей (дат или товаров)
+    public int groupCount() {
+        return groups.size();
+    }
+
+    public Set<String> keys() {
+        return groups.keySet();
+    }
+
+    public Collection<Group> groups() {
+        return groups.values();
+    }
+
+    // Группы в хронологическом порядке (а не в порядке строк "dd.MM.yyyy")
+    public List<Group> chronologicalGroups() {
+        return groups.values().stream().sorted(CHRONOLOGICAL).toList();
+    }
+
+    // null, если строк с таким ключом нет
+    public Group group(String key) {
+        return groups.get(key);
+    }
+
+    public int rowCount() {
+        return rowStarts.length - 1;
+    }
+
+    public int cellCount(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    public String text(int row, int cell) {
+        return texts[rowStarts[row] + cell];
+    }
+
+    // Значение ячейки в копейках или NOT_AMOUNT
+    public long amount(int row, int cell) {
+        return amounts[rowStarts[row] + cell];
+    }
+
+    public List<String> rowCells(int row) {
+        return Arrays.asList(texts).subList(rowStarts[row], rowStarts[row + 1]);
+    }
+
+    /**
+     * Запись таблицы в двоичном виде для кэша разбора (ParseCache): строки с ячейками и суммами,
+     * затем группы в исходном порядке.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(rowCount());
+        for (int row = 0; row < rowCount(); row++) {
+            out.writeInt(cellCount(row));
+            for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+                out.writeUTF(texts[i]);
+                out.writeLong(amounts[i]);
+            }
+        }
+        out.writeInt(groups.size());
+        for (Group group : groups.values()) {
+            out.writeUTF(group.key());
+            out.writeInt(group.rows().length);
+            for (int row : group.rows()) {
+                out.writeInt(row);
+            }
+        }
+    }
+
+    // Таблица, записанная методом write
+    public static ActTable read(DataInput in) throws IOException {
+        int rowCount = in.readInt();
+        int[] rowStarts = new int[rowCount + 1];
+        List<String> texts = new ArrayList<>();
+        long[] amounts = new long[16];
+        for (int row = 0; row < rowCount; row++) {
+            int cells = in.readInt();
+            for (int cell = 0; cell < cells; cell++) {
+                if (texts.size() == amounts.length) {
+                    amounts = Arrays.copyOf(amounts, amounts.length * 2);
+                }
+                texts.add(in.readUTF());
+                amounts[texts.size() - 1] = in.readLong();
+            }
+            rowStarts[row + 1] = texts.size();
+        }
+
+        int groupCount = in.readInt();
+        Map<String, Group> groups = new LinkedHashMap<>();
+        for (int g = 0; g < groupCount; g++) {
+            String key = in.readUTF();
+            int[] rows = new int[in.readInt()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = in.readInt();
+                if (rows[i] < 0 || rows[i] >= rowCount) {
+                    throw new IOException("Номер строки вне таблицы: " + rows[i]);
+                }
+            }
+            groups.put(key, new Group(key, parseDateKey(key), rows));
+        }
+        return new ActTable(texts.toArray(new String[0]), Arrays.copyOf(amounts, texts.size()), rowStarts, groups);
+    }
+
+    /**
+     * Разбирает число из ячейки в копейки (с округлением до копейки, как при выводе "%.2f").
+     *
+     * @return значение в копейках или NOT_AMOUNT, если это не число
+     */
+    public static long toKopecks(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NOT_AMOUNT;
+        }
+        try {
+            double number = Double.parseDouble(value.replace(",", "."));
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                return NOT_AMOUNT;
+            }
+            return BigDecimal.valueOf(number).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return NOT_AMOUNT;
+        }
+    }
+
+    // Дата из ключа "dd.MM.yyyy" или null
+    static LocalDate parseDateKey(String key) {
+        try {
+            return LocalDate.parse(key, DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Построение таблицы по мере разбора файла.
+     */
+    public static final class Builder {
+        private final List<String> texts = new ArrayList<>();
+        private long[] amounts = new long[64];
+        private int[] rowStarts = new int[16];
+        private int rowCount;
+        private final Map<String, RowList> groups = new LinkedHashMap<>();
+
+        public Builder add(String key, List<String> cells) {
+            if (rowCount + 2 > rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+            }
+            int start = texts.size();
+            if (start + cells.size() > amounts.length) {
+                amounts = Arrays.copyOf(amounts, Math.max(amounts.length * 2, start + cells.size()));
+            }
+            for (String cell : cells) {
+                amounts[texts.size()] = toKopecks(cell);
+                texts.add(cell);
+            }
+            rowStarts[rowCount] = start;
+            rowStarts[rowCount + 1] = texts.size();
+            groups.computeIfAbsent(key, _ -> new RowList()).add(rowCount);
+            rowCount++;
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return rowCount == 0;
+        }
+
+        public ActTable build() {
+            Map<String, Group> built = new LinkedHashMap<>();
+            groups.forEach((key, rows) -> built.put(key, new Group(key, parseDateKey(key), rows.toArray())));
+            return new ActTable(texts.toArray(new String[0]), Arrays.copyOf(amounts, texts.size()),
+                    Arrays.copyOf(rowStarts, rowCount + 1), built);
+        }
+    }
+
+    // Растущий массив номеров строк без упаковки в Integer
+    private static final class RowList {
+        private int[] rows = new int[4];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
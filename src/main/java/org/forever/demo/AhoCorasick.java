@@ -0,0 +1,187 @@
+package org.forever.demo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Автомат Ахо-Корасик для поиска многих строк за один проход по тексту.
+ * Символы подаются по одному через {@link #next(int, char)}; состояние - обычный int,
+ * поэтому один автомат можно использовать из нескольких потоков одновременно.
+ */
+public final class AhoCorasick {
+
+    public static final int ROOT = 0;
+
+    // Переходы бора: у состояния s ребра с edgeStart[s] по edgeStart[s + 1] - 1,
+    // символы edgeChars отсортированы, чтобы искать переход двоичным поиском без упаковки в объекты
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    // Состояние, куда переходим, если из текущего нет перехода по символу (самый длинный суффикс в боре)
+    private final int[] failure;
+    // Номер самого длинного образца, который заканчивается в состоянии (с учетом суффиксов), или -1
+    private final int[] output;
+    private final int[] patternLengths;
+
+    private AhoCorasick(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int[] failure, int[] output,
+                        int[] patternLengths) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.failure = failure;
+        this.output = output;
+        this.patternLengths = patternLengths;
+    }
+
+    /**
+     * @param patterns Образцы; номер образца - позиция в списке. При одинаковой длине
+     *                 приоритет у образца, стоящего в списке раньше
+     */
+    public static AhoCorasick build(List<String> patterns) {
+        // Пока строится бор, ребра каждого состояния лежат в собственных отсортированных массивах
+        char[][] childChars = new char[16][];
+        int[][] childTargets = new int[16][];
+        int[] childCount = new int[16];
+        int[] patternAt = new int[16];
+        Arrays.fill(patternAt, -1);
+        int states = 1;
+        int edges = 0;
+
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int count = childCount[state];
+                char[] chars = childChars[state];
+                int at = count == 0 ? -1 : Arrays.binarySearch(chars, 0, count, c);
+                if (at >= 0) {
+                    state = childTargets[state][at];
+                    continue;
+                }
+                if (states == patternAt.length) {
+                    int capacity = states * 2;
+                    childChars = Arrays.copyOf(childChars, capacity);
+                    childTargets = Arrays.copyOf(childTargets, capacity);
+                    childCount = Arrays.copyOf(childCount, capacity);
+                    patternAt = Arrays.copyOf(patternAt, capacity);
+                    Arrays.fill(patternAt, states, capacity, -1);
+                }
+                if (chars == null) {
+                    childChars[state] = chars = new char[2];
+                    childTargets[state] = new int[2];
+                } else if (count == chars.length) {
+                    childChars[state] = chars = Arrays.copyOf(chars, count * 2);
+                    childTargets[state] = Arrays.copyOf(childTargets[state], count * 2);
+                }
+                int insert = count == 0 ? 0 : -at - 1;
+                int[] targets = childTargets[state];
+                System.arraycopy(chars, insert, chars, insert + 1, count - insert);
+                System.arraycopy(targets, insert, targets, insert + 1, count - insert);
+                chars[insert] = c;
+                targets[insert] = states;
+                childCount[state] = count + 1;
+                edges++;
+                state = states++;
+            }
+            if (patternAt[state] < 0 && !pattern.isEmpty()) {
+                patternAt[state] = p;
+            }
+        }
+
+        // Ребра всех состояний подряд в трех массивах
+        int[] edgeStart = new int[states + 1];
+        char[] edgeChars = new char[edges];
+        int[] edgeTargets = new int[edges];
+        for (int state = 0; state < states; state++) {
+            int start = edgeStart[state];
+            int count = childCount[state];
+            if (count > 0) {
+                System.arraycopy(childChars[state], 0, edgeChars, start, count);
+                System.arraycopy(childTargets[state], 0, edgeTargets, start, count);
+            }
+            edgeStart[state + 1] = start + count;
+        }
+
+        AhoCorasick automaton = new AhoCorasick(edgeStart, edgeChars, edgeTargets, new int[states],
+                Arrays.copyOf(patternAt, states), patternLengths(patterns));
+        automaton.buildFailureLinks();
+        return automaton;
+    }
+
+    // Обход в ширину: ссылка потомка строится по уже готовой ссылке родителя
+    private void buildFailureLinks() {
+        int[] queue = new int[failure.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = ROOT;
+        while (head < tail) {
+            int state = queue[head++];
+            for (int edge = edgeStart[state]; edge < edgeStart[state + 1]; edge++) {
+                int target = edgeTargets[edge];
+                int fail = ROOT;
+                if (state != ROOT) {
+                    int fallback = failure[state];
+                    while (true) {
+                        int next = transition(fallback, edgeChars[edge]);
+                        if (next >= 0) {
+                            fail = next;
+                            break;
+                        }
+                        if (fallback == ROOT) {
+                            break;
+                        }
+                        fallback = failure[fallback];
+                    }
+                }
+                failure[target] = fail;
+                if (output[target] < 0) {
+                    output[target] = output[fail];
+                }
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    private static int[] patternLengths(List<String> patterns) {
+        int[] patternLengths = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            patternLengths[p] = patterns.get(p).length();
+        }
+        return patternLengths;
+    }
+
+    // Состояние после очередного символа текста
+    public int next(int state, char c) {
+        while (true) {
+            int target = transition(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    // Номер образца, которым заканчивается прочитанный текст, или -1
+    public int match(int state) {
+        return output[state];
+    }
+
+    public int patternLength(int pattern) {
+        return patternLengths[pattern];
+    }
+
+    // Переход по ребру бора или -1, если ребра с таким символом нет
+    private int transition(int state, char c) {
+        int from = edgeStart[state];
+        int to = edgeStart[state + 1];
+        if (from == to) {
+            return -1;
+        }
+        int edge = Arrays.binarySearch(edgeChars, from, to, c);
+        return edge >= 0 ? edgeTargets[edge] : -1;
+    }
+}
@@ -0,0 +1,134 @@
+package org.forever.demo;
+
+import java.util.Arrays;
+
+/**
+ * Мультимножество сумм (в копейках) для сравнения одной даты: сумма -> сколько раз встретилась.
+ * Хеш-таблица с открытой адресацией по примитивным long/int, без упаковки в Long/Integer.
+ * Суммы хранятся в порядке первого появления, поэтому сводка выводится в том же порядке,
+ * что и строки файла.
+ */
+public final class AmountMultiset {
+
+    private long[] amounts = new long[8];
+    private int[] counts = new int[8];
+    private int size;
+    // Слот хеш-таблицы хранит индекс суммы в amounts + 1 (0 - пустой слот)
+    private int[] slots = new int[16];
+
+    public static AmountMultiset of(ActTable table, int[] rows) {
+        AmountMultiset multiset = new AmountMultiset();
+        for (int row : rows) {
+            for (int cell = 0; cell < table.cellCount(row); cell++) {
+                long amount = table.amount(row, cell);
+                // В сравнении участвуют только НЕНУЛЕВЫЕ числовые значения
+                if (amount != ActTable.NOT_AMOUNT && amount != 0) {
+                    multiset.add(amount);
+                }
+            }
+        }
+        return multiset;
+    }
+
+    public void add(long amount) {
+        int slot = findSlot(amount);
+        int index = slots[slot] - 1;
+        if (index >= 0) {
+            counts[index]++;
+            return;
+        }
+
+        if (size == amounts.length) {
+            amounts = Arrays.copyOf(amounts, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        amounts[size] = amount;
+        counts[size] = 1;
+        size++;
+        slots[slot] = size;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    // Количество различных сумм
+    public int size() {
+        return size;
+    }
+
+    public long amountAt(int index) {
+        return amounts[index];
+    }
+
+    public int countAt(int index) {
+        return counts[index];
+    }
+
+    // Индекс суммы или -1, если ее нет
+    public int indexOf(long amount) {
+        return slots[findSlot(amount)] - 1;
+    }
+
+    public int count(long amount) {
+        int index = indexOf(amount);
+        return index >= 0 ? counts[index] : 0;
+    }
+
+    /**
+     * Насколько чаще сумма с данным индексом встречается здесь, чем в другом мультимножестве
+     * (0, если не чаще). Пройдя по индексам обоих мультимножеств, получаем симметрическую разность.
+     */
+    public int surplusAt(int index, AmountMultiset other) {
+        return Math.max(0, counts[index] - other.count(amounts[index]));
+    }
+
+    // Совпадают ли мультимножества (порядок сумм не важен)
+    public boolean sameAs(AmountMultiset other) {
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (counts[i] != other.count(amounts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Копия счетчиков по индексам - для поштучного "расходования" сумм
+    public int[] countsCopy() {
+        return Arrays.copyOf(counts, size);
+    }
+
+    private int findSlot(long amount) {
+        int mask = slots.length - 1;
+        int slot = hash(amount) & mask;
+        while (slots[slot] != 0 && amounts[slots[slot] - 1] != amount) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(amounts[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    // Перемешивание битов (финализатор MurmurHash3), чтобы близкие суммы не шли в соседние слоты
+    private static int hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
@@ -0,0 +1,295 @@
+package org.forever.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Пакетная сверка: все акты из папки разбиваются на пары по контрагенту и сравниваются параллельно.
+ * <p>
+ * Пара составляется из двух файлов с одним и тем же контрагентом (findCounterpartyName).
+ * Файлы для поиска контрагента загружаются с настройками сверки и через кэш разбора. Разобранные акты
+ * хранятся до сравнения своей пары (независимо от размера кэша и от того, включен ли он), так что
+ * при сравнении файл повторно не читается; накладные разбираются только при сравнении.
+ * Файлы, для которых контрагент не найден или найден больше чем в двух файлах, объединяются
+ * по имени: часть имени до последнего "_" должна совпадать ("Ромашка_наш.xlsx" и "Ромашка_их.xls").
+ * Оставшиеся файлы попадают в отчет как файлы без пары.
+ * <p>
+ * Сравнения выполняются в ForkJoinPool с ограниченным числом потоков; по каждой паре в отчет
+ * пишутся статус, количество дат (для накладных - товаров) с расхождениями и время, в конце - итоги.
+ * Настройки сверки общие для всех пар и не изменяются при сравнении.
+ */
+public class BatchReconciliation {
+    private static final Logger logger = Logger.getLogger(BatchReconciliation.class.getName());
+
+    private static final String COUNTERPARTY_NOT_FOUND = "КОНТРАГЕНТ НЕ НАЙДЕН";
+    private static final DateTimeFormatter REPORT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+    public enum Status {
+        MATCH("совпадает"),
+        MISMATCH("расхождения"),
+        ERROR("ошибка");
+
+        private final String title;
+
+        Status(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    /**
+     * Пара файлов одного контрагента.
+     *
+     * @param counterparty Контрагент или общая часть имени файлов
+     */
+    public record Pair(String counterparty, File file1, File file2) {
+    }
+
+    /**
+     * Результат сравнения одной пары.
+     *
+     * @param mismatchedDates Количество дат (товаров) с расхождениями
+     * @param error           Текст ошибки для статуса ERROR, иначе null
+     * @param millis          Полное время сравнения пары
+     * @param timings         Замеры по этапам (null при ошибке)
+     * @param diagnostics     Замечания при разборе файлов пары (null при ошибке)
+     */
+    public record PairResult(Pair pair, Status status, int mismatchedDates, String error, long millis,
+                             StageTimings timings, ParseDiagnostics diagnostics) {
+    }
+
+    /**
+     * Итог пакетной сверки.
+     *
+     * @param unpaired Файлы, для которых не нашлось пары
+     * @param millis   Время всей сверки
+     */
+    public record Report(File directory, List<PairResult> results, List<File> unpaired, long millis) {
+
+        public long count(Status status) {
+            return results.stream().filter(result -> result.status() == status).count();
+        }
+
+        public String toText() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Пакетная сверка: ").append(directory.getAbsolutePath()).append('\n');
+            sb.append("Дата: ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"))).append("\n\n");
+
+            sb.append("Контрагент;Файл 1;Файл 2;Статус;Дат (товаров) с расхождениями;Замечаний;Пропущено строк;Время, мс;Этапы;Ошибка\n");
+            for (PairResult result : results) {
+                sb.append(csv(result.pair().counterparty())).append(';')
+                        .append(csv(result.pair().file1().getName())).append(';')
+                        .append(csv(result.pair().file2().getName())).append(';')
+                        .append(result.status().getTitle()).append(';')
+                        .append(result.mismatchedDates()).append(';')
+                        .append(result.diagnostics() != null ? result.diagnostics().getProblemCount() : 0).append(';')
+                        .append(result.diagnostics() != null ? result.diagnostics().getSkippedRowCount() : 0).append(';')
+                        .append(result.millis()).append(';')
+                        .append(result.timings() != null ? result.timings().getMillisByStage() : "").append(';')
+                        .append(result.error() != null ? csv(result.error()) : "").append('\n');
+            }
+
+            if (!unpaired.isEmpty()) {
+                sb.append("\nФайлы без пары:\n");
+                unpaired.forEach(file -> sb.append(file.getName()).append('\n'));
+            }
+
+            sb.append("\nИтого пар: ").append(results.size())
+                    .append("; совпадает: ").append(count(Status.MATCH))
+                    .append("; с расхождениями: ").append(count(Status.MISMATCH))
+                    .append("; ошибок: ").append(count(Status.ERROR))
+                    .append("; дат (товаров) с расхождениями: ").append(results.stream().mapToInt(PairResult::mismatchedDates).sum())
+                    .append("; файлов без пары: ").append(unpaired.size())
+                    .append("; время: ").append(millis).append(" мс\n");
+            return sb.toString();
+        }
+
+        // Разделитель колонок внутри значения заменяется, чтобы не сдвигать колонки
+        private static String csv(String value) {
+            return value.replace(';', ',').replace('\n', ' ');
+        }
+
+        // Сохраняет отчет в папку сверки и возвращает файл отчета
+        public File write() throws IOException {
+            File reportFile = new File(directory, "Сверка_" + LocalDateTime.now().format(REPORT_NAME_FORMAT) + ".csv");
+            // BOM, чтобы Excel открыл отчет в UTF-8
+            Files.writeString(reportFile.toPath(), "\uFEFF" + toText(), StandardCharsets.UTF_8);
+            return reportFile;
+        }
+    }
+
+    public static Report run(File directory, ComparisonSettings settings) {
+        return run(directory, settings, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism Сколько пар сравнивается одновременно
+     */
+    public static Report run(File directory, ComparisonSettings settings, int parallelism) {
+        long start = System.nanoTime();
+        List<File> files = listActFiles(directory);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<FileScan> scans = invokeAll(pool, files.stream()
+                    .<Callable<FileScan>>map(file -> () -> scan(file, settings))
+                    .toList());
+            List<String> counterparties = new ArrayList<>();
+            Map<File, ParseCache.Entry> parsedActs = new ConcurrentHashMap<>();
+            for (int i = 0; i < files.size(); i++) {
+                counterparties.add(scans.get(i).counterparty());
+                if (scans.get(i).act() != null) {
+                    parsedActs.put(files.get(i), scans.get(i).act());
+                }
+            }
+
+            List<File> unpaired = new ArrayList<>();
+            List<Pair> pairs = pairFiles(files, counterparties, unpaired);
+            logger.info("Пакетная сверка " + directory.getAbsolutePath() + ": пар " + pairs.size()
+                    + ", файлов без пары " + unpaired.size());
+
+            List<PairResult> results = invokeAll(pool, pairs.stream()
+                    .<Callable<PairResult>>map(pair -> () -> compare(pair, settings, parsedActs))
+                    .toList());
+
+            return new Report(directory, results, unpaired, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<File> listActFiles(File directory) {
+        File[] files = directory.listFiles(file -> {
+            String name = file.getName().toLowerCase();
+            // ~$ - временные файлы открытых в Excel книг
+            return file.isFile() && !name.startsWith("~$") && (name.endsWith(".xls") || name.endsWith(".xlsx"));
+        });
+        if (files == null) {
+            throw new IllegalArgumentException("Не удалось прочитать папку: " + directory.getAbsolutePath());
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return List.of(files);
+    }
+
+    /**
+     * Результат первого прохода по файлу.
+     *
+     * @param counterparty Контрагент или null, если не найден
+     * @param act          Разобранный акт или null, если файл будет разобран при сравнении пары
+     */
+    private record FileScan(String counterparty, ParseCache.Entry act) {
+    }
+
+    private static FileScan scan(File file, ComparisonSettings settings) {
+        try (LoadedWorkbook loaded = LoadedWorkbook.load(file, new StageTimings(), settings.getParserEngine(),
+                settings.getParseCache())) {
+            // Замечания разбора здесь не нужны - пропущенные строки сохраняются в акте, остальное соберет сравнение пары
+            ParseDiagnostics diagnostics = new ParseDiagnostics();
+            ParseCache.Entry act = ExcelComparator.parseAct(loaded, settings, diagnostics);
+            String name = act != null ? act.counterpartyName() : ExcelComparator.findCounterpartyName(List.of(loaded), diagnostics);
+            return new FileScan(COUNTERPARTY_NOT_FOUND.equals(name) ? null : name, act);
+        } catch (Exception e) {
+            return new FileScan(null, null); // Файл попробуем сопоставить по имени, ошибку покажет сравнение
+        }
+    }
+
+    private static List<Pair> pairFiles(List<File> files, List<String> counterparties, List<File> unpaired) {
+        List<Pair> pairs = new ArrayList<>();
+
+        Map<String, List<File>> byCounterparty = new LinkedHashMap<>();
+        List<File> rest = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (counterparties.get(i) != null) {
+                byCounterparty.computeIfAbsent(counterparties.get(i), _ -> new ArrayList<>()).add(files.get(i));
+            } else {
+                rest.add(files.get(i));
+            }
+        }
+        byCounterparty.forEach((counterparty, group) -> {
+            if (group.size() == 2) {
+                pairs.add(new Pair(counterparty, group.get(0), group.get(1)));
+            } else {
+                rest.addAll(group);
+            }
+        });
+
+        Map<String, List<File>> byName = new LinkedHashMap<>();
+        rest.sort(Comparator.comparing(File::getName));
+        for (File file : rest) {
+            byName.computeIfAbsent(nameStem(file), _ -> new ArrayList<>()).add(file);
+        }
+        byName.forEach((stem, group) -> {
+            if (group.size() == 2) {
+                pairs.add(new Pair(stem, group.get(0), group.get(1)));
+            } else {
+                unpaired.addAll(group);
+            }
+        });
+        return pairs;
+    }
+
+    // Часть имени файла до последнего "_" (без расширения)
+    private static String nameStem(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        int underscore = name.lastIndexOf('_');
+        return (underscore > 0 ? name.substring(0, underscore) : name).trim();
+    }
+
+    private static PairResult compare(Pair pair, ComparisonSettings settings, Map<File, ParseCache.Entry> parsedActs) {
+        long start = System.nanoTime();
+        // Акты пары больше нигде не нужны - после сравнения их можно освободить
+        Map<File, ParseCache.Entry> pairActs = new HashMap<>();
+        for (File file : List.of(pair.file1(), pair.file2())) {
+            ParseCache.Entry act = parsedActs.remove(file);
+            if (act != null) {
+                pairActs.put(file, act);
+            }
+        }
+        try {
+            ComparisonPipeline.Outcome outcome = ComparisonPipeline.runParsed(new File[]{pair.file1(), pair.file2()}, settings, pairActs);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            // Для накладных расхождения - товары с разными суммами, а не строки сводки
+            boolean match = outcome.prihodRashod() ? outcome.mismatchedKeys() == 0 : outcome.result().summaryLines().isEmpty();
+            return new PairResult(pair, match ? Status.MATCH : Status.MISMATCH, outcome.mismatchedKeys(), null, millis,
+                    outcome.timings(), outcome.diagnostics());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Ошибка сверки " + pair.file1().getName() + " и " + pair.file2().getName(), e);
+            return new PairResult(pair, Status.ERROR, 0, ErrorSink.describe(e), (System.nanoTime() - start) / 1_000_000, null, null);
+        }
+    }
+
+    // Выполняет задачи в пуле и возвращает результаты в порядке задач
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Пакетная сверка прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,250 @@
+package org.forever.demo;
+
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.CodePageUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Потоковое чтение первого листа старого XLS (Excel 5.0/7.0, BIFF5) без внешнего конвертера.
+ * HSSFWorkbook такие файлы не открывает, поэтому записи потока "Book" читаются напрямую через
+ * RecordInputStream (так же, как это делает OldExcelExtractor), а значения ячеек форматируются
+ * как в XlsStreamingReader: даты по формату ячейки в "dd.MM.yyyy", остальные числа - String.valueOf(double).
+ * Строки в BIFF5 однобайтовые, в кодировке из записи CODEPAGE.
+ */
+public class Biff5StreamingReader {
+
+    // Идентификаторы записей BIFF5, для которых в POI нет классов (или они только для BIFF8)
+    private static final int FORMAT_SID = 0x041E;
+    private static final int XF_SID = 0x00E0;
+    private static final int DATEMODE_SID = 0x0022;
+    private static final int RSTRING_SID = 0x00D6;
+    private static final int BOF_TYPE_WORKSHEET = 0x0010;
+
+    // Потоки книги: BIFF5 обычно пишет "Book", но встречаются файлы с "Workbook"
+    private static final String[] BOOK_ENTRIES = {"Book", "Workbook", "WORKBOOK", "BOOK"};
+
+    public static void read(File file, SheetRowSink sink) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+            DirectoryNode root = fs.getRoot();
+            for (String entry : BOOK_ENTRIES) {
+                if (root.hasEntry(entry)) {
+                    try (InputStream in = root.createDocumentInputStream(entry)) {
+                        new SheetReader(sink).read(new RecordInputStream(in));
+                    }
+                    return;
+                }
+            }
+            throw new IOException("В файле нет потока книги Excel: " + file.getName());
+        }
+    }
+
+    private static final class SheetReader {
+        private final SheetRowSink sink;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+
+        private CodepageRecord codepage;
+        private final Map<Integer, String> formats = new HashMap<>();
+        // Номер формата для каждой записи XF по порядку
+        private final List<Integer> xfFormats = new ArrayList<>();
+        private boolean date1904;
+        // Глубина вложенности BOF/EOF: диаграммы внутри листа имеют собственные BOF и EOF
+        private int depth;
+        private boolean inFirstSheet;
+        // Формула со строковым результатом: значение придет следующей записью STRING
+        private OldFormulaRecord pendingFormula;
+
+        private int rowNum = -1;
+        private List<SheetRow.Cell> cells = new ArrayList<>();
+
+        SheetReader(SheetRowSink sink) {
+            this.sink = sink;
+        }
+
+        void read(RecordInputStream ris) throws IOException {
+            while (ris.hasNextRecord()) {
+                ris.nextRecord();
+                int sid = ris.getSid();
+
+                if (sid == BOFRecord.sid) {
+                    // Тип подпотока - второе слово BOF (первое - версия)
+                    ris.readUShort();
+                    if (depth == 0 && ris.readUShort() == BOF_TYPE_WORKSHEET) {
+                        inFirstSheet = true;
+                    }
+                    depth++;
+                } else if (sid == EOFRecord.sid) {
+                    depth--;
+                    if (inFirstSheet && depth == 0) {
+                        // Первый лист прочитан, остальные не нужны
+                        flushRow();
+                        return;
+                    }
+                } else if (depth == 1 && !inFirstSheet) {
+                    readGlobalsRecord(ris, sid);
+                } else if (depth == 1 && !readSheetRecord(ris, sid)) {
+                    return; // Получателю больше не нужны строки
+                }
+
+                // Непрочитанный остаток записи пропускаем, иначе RecordInputStream не перейдет к следующей
+                if (ris.remaining() > 0) {
+                    ris.readRemainder();
+                }
+            }
+            flushRow();
+        }
+
+        // Записи книги до первого листа: кодировка, форматы чисел и система дат
+        private void readGlobalsRecord(RecordInputStream ris, int sid) throws IOException {
+            switch (sid) {
+                case CodepageRecord.sid -> codepage = new CodepageRecord(ris);
+                case DATEMODE_SID -> date1904 = ris.readUShort() == 1;
+                case FORMAT_SID -> {
+                    int index = ris.readUShort();
+                    formats.put(index, readByteString(ris, ris.readUByte()));
+                }
+                case XF_SID -> {
+                    ris.readUShort(); // шрифт
+                    xfFormats.add(ris.readUShort());
+                }
+                default -> {
+                }
+            }
+        }
+
+        // Записи ячеек первого листа. false - получателю больше не нужны строки
+        private boolean readSheetRecord(RecordInputStream ris, int sid) throws IOException {
+            if (pendingFormula != null) {
+                OldFormulaRecord formula = pendingFormula;
+                pendingFormula = null;
+                if (sid == OldStringRecord.biff345_sid) {
+                    OldStringRecord string = new OldStringRecord(ris);
+                    string.setCodePage(codepage);
+                    return addCell(formula.getRow(), formula.getColumn(), string.getString().trim());
+                }
+                if (!addCell(formula.getRow(), formula.getColumn(), "")) {
+                    return false;
+                }
+            }
+
+            switch (sid) {
+                case OldLabelRecord.biff345_sid -> {
+                    OldLabelRecord label = new OldLabelRecord(ris);
+                    label.setCodePage(codepage);
+                    return addCell(label.getRow(), label.getColumn(), label.getValue().trim());
+                }
+                case RSTRING_SID -> {
+                    // Строка с форматированием частей: как LABEL, после текста идут отрезки шрифтов
+                    int row = ris.readUShort();
+                    int column = ris.readUShort();
+                    ris.readUShort(); // XF
+                    return addCell(row, column, readByteString(ris, ris.readUShort()).trim());
+                }
+                case NumberRecord.sid -> {
+                    NumberRecord number = new NumberRecord(ris);
+                    return addCell(number.getRow(), number.getColumn(), numericValue(number.getValue(), number.getXFIndex()));
+                }
+                case RKRecord.sid -> {
+                    RKRecord rk = new RKRecord(ris);
+                    return addCell(rk.getRow(), rk.getColumn(), numericValue(rk.getRKNumber(), rk.getXFIndex()));
+                }
+                case MulRKRecord.sid -> {
+                    MulRKRecord mulRk = new MulRKRecord(ris);
+                    for (int i = 0; i < mulRk.getNumColumns(); i++) {
+                        String value = numericValue(mulRk.getRKNumberAt(i), mulRk.getXFAt(i));
+                        if (!addCell(mulRk.getRow(), mulRk.getFirstColumn() + i, value)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                case OldFormulaRecord.biff5_sid -> {
+                    OldFormulaRecord formula = new OldFormulaRecord(ris);
+                    return switch (formula.getCachedResultTypeEnum()) {
+                        case NUMERIC -> addCell(formula.getRow(), formula.getColumn(), String.valueOf(formula.getValue()));
+                        case STRING -> {
+                            pendingFormula = formula;
+                            yield true;
+                        }
+                        // Для логических и ошибочных результатов getCellValueAsString возвращает ""
+                        default -> addCell(formula.getRow(), formula.getColumn(), "");
+                    };
+                }
+                case BoolErrRecord.sid -> {
+                    BoolErrRecord boolErr = new BoolErrRecord(ris);
+                    return addCell(boolErr.getRow(), boolErr.getColumn(),
+                            boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()) : "");
+                }
+                case BlankRecord.sid -> {
+                    BlankRecord blank = new BlankRecord(ris);
+                    return addCell(blank.getRow(), blank.getColumn(), "");
+                }
+                case MulBlankRecord.sid -> {
+                    MulBlankRecord mulBlank = new MulBlankRecord(ris);
+                    for (int i = 0; i < mulBlank.getNumColumns(); i++) {
+                        if (!addCell(mulBlank.getRow(), mulBlank.getFirstColumn() + i, "")) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                default -> {
+                    return true;
+                }
+            }
+        }
+
+        // Число или дата, как getCellValueAsString для NUMERIC
+        private String numericValue(double value, int xfIndex) {
+            if (DateUtil.isValidExcelDate(value) && xfIndex >= 0 && xfIndex < xfFormats.size()) {
+                int formatIndex = xfFormats.get(xfIndex);
+                String formatString = formats.getOrDefault(formatIndex, BuiltinFormats.getBuiltinFormat(formatIndex));
+                if (formatString != null && DateUtil.isADateFormat(formatIndex, formatString)) {
+                    return dateFormat.format(DateUtil.getJavaDate(value, date1904));
+                }
+            }
+            return String.valueOf(value);
+        }
+
+        // Однобайтовая строка BIFF5 в кодировке книги
+        private String readByteString(RecordInputStream ris, int length) throws UnsupportedEncodingException {
+            byte[] bytes = new byte[Math.min(length, ris.remaining())];
+            ris.readFully(bytes);
+            int cp = codepage != null ? codepage.getCodepage() & 0xFFFF : CodePageUtil.CP_WINDOWS_1252;
+            return CodePageUtil.getStringFromCodePage(bytes, cp);
+        }
+
+        // Ячейки приходят по строкам; при переходе на новую строку предыдущая отдается получателю
+        private boolean addCell(int row, int column, String value) {
+            if (row != rowNum) {
+                if (!flushRow()) {
+                    return false;
+                }
+                rowNum = row;
+            }
+            cells.add(new SheetRow.Cell(column, value));
+            return true;
+        }
+
+        private boolean flushRow() {
+            if (cells.isEmpty()) {
+                return true;
+            }
+            SheetRow row = new SheetRow(rowNum, cells);
+            cells = new ArrayList<>();
+            return sink.acceptRow(row);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.forever.demo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Папки кэшей программы в личной папке пользователя: на Windows - %LOCALAPPDATA%\demo\cache,
+ * иначе - $XDG_CACHE_HOME/demo или ~/.cache/demo. Кэши не зависят от рабочей папки, из которой
+ * запущена программа, и доступны только владельцу (в них суммы и контрагенты из актов).
+ */
+public final class CacheDirectories {
+    private static final Logger logger = Logger.getLogger(CacheDirectories.class.getName());
+
+    private CacheDirectories() {
+    }
+
+    // Общая папка кэшей текущего пользователя (может еще не существовать)
+    public static Path root() {
+        String localAppData = System.getenv("LOCALAPPDATA");
+        String xdgCache = System.getenv("XDG_CACHE_HOME");
+        if (System.getProperty("os.name").toLowerCase().contains("win") && localAppData != null) {
+            return Paths.get(localAppData, "demo", "cache");
+        }
+        if (xdgCache != null && !xdgCache.isBlank()) {
+            return Paths.get(xdgCache, "demo");
+        }
+        return Paths.get(System.getProperty("user.home"), ".cache", "demo");
+    }
+
+    /**
+     * Папка одного кэша внутри root(); создается при первом обращении и доступна только текущему пользователю.
+     */
+    public static Path directory(String name) throws IOException {
+        Path directory = root().resolve(name);
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            try {
+                Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+            } catch (UnsupportedOperationException e) {
+                // Windows: папка в %LOCALAPPDATA% и так доступна только владельцу
+            }
+        }
+        return directory;
+    }
+
+    // Время изменения записи - время последнего использования, по нему вытесняются старые записи
+    static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Не удалось обновить время использования " + file, e);
+        }
+    }
+
+    /**
+     * Удаляет из папки записи (файлы с расширением extension) старше maxAgeMillis,
+     * затем самые давно использованные, пока общий размер больше maxBytes.
+     */
+    static synchronized void evict(Path directory, String extension, long maxBytes, long maxAgeMillis) {
+        record CachedFile(Path path, long size, long lastUsed) {
+        }
+
+        List<CachedFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.filter(path -> path.getFileName().toString().endsWith(extension)).toList()) {
+                files.add(new CachedFile(path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Не удалось прочитать кэш " + directory, e);
+            return;
+        }
+
+        files.sort(Comparator.comparingLong(CachedFile::lastUsed));
+        long totalBytes = files.stream().mapToLong(CachedFile::size).sum();
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        for (CachedFile file : files) {
+            if (file.lastUsed() >= oldest && totalBytes <= maxBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path());
+                totalBytes -= file.size();
+            } catch (IOException e) {
+                // Файл может быть открыт другим сравнением - удалим в следующий раз
+                logger.log(Level.FINE, "Не удалось удалить из кэша " + file.path(), e);
+            }
+        }
+    }
+
+    static void deleteRecursively(Path path) {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Не удалось удалить " + path, e);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.forever.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сравнение из командной строки, без запуска JavaFX - для ночных сверок на сервере и замеров скорости.
+ * <pre>
+ * java -cp demo.jar org.forever.demo.ComparisonCli [параметры] файл1 файл2
+ * java -cp demo.jar org.forever.demo.ComparisonCli [параметры] --batch папка
+ *
+ *   --abs              сравнение по модулю
+ *   --prihod           сравнение приходных накладных по товарам (если файлы окажутся актами сверки - ошибка)
+ *   --engine ИМЯ       AUTO, DOM или STREAMING
+ *   --no-cache         не использовать кэш разобранных файлов
+ *   --disk-cache       сохранять кэш разобранных файлов на диск (в личной папке кэшей пользователя)
+ *   --json             результат в JSON вместо текста
+ *   --out ФАЙЛ         записать результат в файл, а не в стандартный вывод
+ * </pre>
+ * Код завершения: 0 - данные совпадают, 1 - есть расхождения, 2 - ошибка.
+ */
+public class ComparisonCli {
+
+    private static final int EXIT_MATCH = 0;
+    private static final int EXIT_MISMATCH = 1;
+    private static final int EXIT_ERROR = 2;
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        ComparisonSettings settings = new ComparisonSettings(false, false);
+        boolean json = false;
+        File out = null;
+        File batchDirectory = null;
+        List<File> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--abs" -> settings.setCompareByAbsoluteValue(true);
+                    case "--prihod" -> settings.setComparePrihodRashod(true);
+                    case "--engine" -> settings.setParserEngine(ParserEngine.valueOf(argument(args, ++i).toUpperCase()));
+                    case "--no-cache" -> settings.setParseCache(null);
+                    case "--disk-cache" -> settings.setParseCache(ParseCache.sharedOnDisk());
+                    case "--json" -> json = true;
+                    case "--out" -> out = new File(argument(args, ++i));
+                    case "--batch" -> batchDirectory = new File(argument(args, ++i));
+                    default -> files.add(new File(args[i]));
+                }
+            }
+            if (batchDirectory == null && files.size() != 2) {
+                throw new IllegalArgumentException("Нужно указать два файла или --batch папка");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Использование: ComparisonCli [--abs] [--prihod] [--engine AUTO|DOM|STREAMING] [--no-cache | --disk-cache] [--json] [--out файл] (файл1 файл2 | --batch папка)");
+            return EXIT_ERROR;
+        }
+
+        // Ошибки чтения файлов - в stderr, без окон
+        settings.setErrorSink((message, e) -> System.err.println(message + (e != null ? ": " + ErrorSink.describe(e) : "")));
+
+        try {
+            String output;
+            int exitCode;
+            if (batchDirectory != null) {
+                BatchReconciliation.Report report = BatchReconciliation.run(batchDirectory, settings);
+                output = json ? batchJson(report) : report.toText();
+                exitCode = report.count(BatchReconciliation.Status.ERROR) > 0 ? EXIT_ERROR
+                        : report.count(BatchReconciliation.Status.MISMATCH) > 0 ? EXIT_MISMATCH : EXIT_MATCH;
+            } else {
+                ComparisonPipeline.Outcome outcome = ComparisonPipeline.run(files.toArray(new File[0]), settings);
+                output = json ? outcomeJson(files, outcome) : outcomeText(files, outcome);
+                exitCode = outcome.result().summaryLines().isEmpty() ? EXIT_MATCH : EXIT_MISMATCH;
+            }
+            write(output, out);
+            return exitCode;
+        } catch (Exception e) {
+            System.err.println("Ошибка: " + ErrorSink.describe(e));
+            return EXIT_ERROR;
+        }
+    }
+
+    private static String argument(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Не указано значение для " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static void write(String output, File out) throws IOException {
+        if (out == null) {
+            PrintStream stdout = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+            stdout.print(output);
+            stdout.flush();
+        } else {
+            Files.writeString(out.toPath(), output, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String outcomeText(List<File> files, ComparisonPipeline.Outcome outcome) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Контрагент: ").append(outcome.counterpartyName()).append('\n');
+        sb.append("Файл 1: ").append(files.get(0).getName()).append('\n');
+        sb.append("Файл 2: ").append(files.get(1).getName()).append('\n');
+        List<String> lines = outcome.result().summaryLines();
+        if (lines.isEmpty()) {
+            sb.append("Данные идентичны!\n");
+        }
+        for (String line : lines) {
+            sb.append(plainText(line)).append('\n');
+        }
+        sb.append(outcome.timings().summary()).append('\n');
+        if (!outcome.diagnostics().isEmpty()) {
+            sb.append(outcome.diagnostics().summary()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String outcomeJson(List<File> files, ComparisonPipeline.Outcome outcome) {
+        ComparisonResult result = outcome.result();
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"counterparty\":").append(quote(outcome.counterpartyName()));
+        sb.append(",\"file1\":").append(quote(files.get(0).getPath()));
+        sb.append(",\"file2\":").append(quote(files.get(1).getPath()));
+        sb.append(",\"identical\":").append(result.summaryLines().isEmpty());
+
+        sb.append(",\"mismatchedKeys\":[");
+        if (result.detailedData() != null) {
+            String separator = "";
+            for (Map.Entry<String, ComparisonResult.MismatchInfo> entry : result.detailedData().mismatches().entrySet()) {
+                sb.append(separator).append("{\"key\":").append(quote(entry.getKey()))
+                        .append(",\"rowsFile1\":").append(entry.getValue().uniqueRowsFile1().length)
+                        .append(",\"rowsFile2\":").append(entry.getValue().uniqueRowsFile2().length).append('}');
+                separator = ",";
+            }
+        }
+        sb.append(']');
+
+        sb.append(",\"summary\":[");
+        String separator = "";
+        for (String line : result.summaryLines()) {
+            sb.append(separator).append(quote(plainText(line)));
+            separator = ",";
+        }
+        sb.append(']');
+
+        sb.append(",\"timingsMs\":").append(timingsJson(outcome.timings()));
+        sb.append(",\"diagnostics\":").append(diagnosticsJson(outcome.diagnostics()));
+        return sb.append("}\n").toString();
+    }
+
+    private static String batchJson(BatchReconciliation.Report report) {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"directory\":").append(quote(report.directory().getPath()));
+        sb.append(",\"millis\":").append(report.millis());
+        sb.append(",\"pairs\":[");
+        String separator = "";
+        for (BatchReconciliation.PairResult result : report.results()) {
+            sb.append(separator).append('{')
+                    .append("\"counterparty\":").append(quote(result.pair().counterparty()))
+                    .append(",\"file1\":").append(quote(result.pair().file1().getName()))
+                    .append(",\"file2\":").append(quote(result.pair().file2().getName()))
+                    .append(",\"status\":").append(quote(result.status().name()))
+                    .append(",\"mismatchedDates\":").append(result.mismatchedDates())
+                    .append(",\"millis\":").append(result.millis())
+                    .append(",\"error\":").append(result.error() != null ? quote(result.error()) : "null")
+                    .append(",\"timingsMs\":").append(result.timings() != null ? timingsJson(result.timings()) : "null")
+                    .append(",\"diagnostics\":").append(result.diagnostics() != null ? diagnosticsJson(result.diagnostics()) : "null")
+                    .append('}');
+            separator = ",";
+        }
+        sb.append("],\"unpaired\":[");
+        separator = "";
+        for (File file : report.unpaired()) {
+            sb.append(separator).append(quote(file.getName()));
+            separator = ",";
+        }
+        return sb.append("]}\n").toString();
+    }
+
+    private static String timingsJson(StageTimings timings) {
+        StringBuilder sb = new StringBuilder("{");
+        String separator = "";
+        for (Map.Entry<String, Long> stage : timings.getMillisByStage().entrySet()) {
+            sb.append(separator).append(quote(stage.getKey())).append(':').append(stage.getValue());
+            separator = ",";
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String diagnosticsJson(ParseDiagnostics diagnostics) {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"problemCount\":").append(diagnostics.getProblemCount());
+        sb.append(",\"problems\":[");
+        String separator = "";
+        for (ParseDiagnostics.Problem problem : diagnostics.getProblems()) {
+            sb.append(separator).append('{')
+                    .append("\"file\":").append(quote(problem.file()))
+                    .append(",\"sheet\":").append(quote(problem.sheet()))
+                    .append(",\"row\":").append(problem.row() >= 0 ? String.valueOf(problem.row() + 1) : "null")
+                    .append(",\"column\":").append(problem.cell() >= 0 ? String.valueOf(problem.cell() + 1) : "null")
+                    .append(",\"cause\":").append(quote(problem.cause()))
+                    .append(",\"error\":").append(problem.error() != null ? quote(ErrorSink.describe(problem.error())) : "null")
+                    .append('}');
+            separator = ",";
+        }
+        sb.append("],\"skippedRows\":{");
+        separator = "";
+        for (Map.Entry<String, Map<String, Integer>> file : diagnostics.getSkippedRows().entrySet()) {
+            sb.append(separator).append(quote(file.getKey())).append(":{");
+            String causeSeparator = "";
+            for (Map.Entry<String, Integer> cause : file.getValue().entrySet()) {
+                sb.append(causeSeparator).append(quote(cause.getKey())).append(':').append(cause.getValue());
+                causeSeparator = ",";
+            }
+            sb.append('}');
+            separator = ",";
+        }
+        return sb.append("}}").toString();
+    }
+
+    // Строка сводки без разметки <span>, которой она раскрашивается в окне
+    private static String plainText(String line) {
+        return line.replaceAll("<[^>]+>", "");
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,102 @@
+package org.forever.demo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Полный цикл одного сравнения: загрузка книг, поиск контрагента, парсинг и сравнение.
+ * Каждый файл открывается один раз, файлы загружаются и разбираются параллельно,
+ * а время каждого этапа записывается в StageTimings.
+ * Замечания парсеров собираются в ParseDiagnostics и передаются в ErrorSink одним сообщением в конце.
+ */
+public class ComparisonPipeline {
+    private static final Logger logger = Logger.getLogger(ComparisonPipeline.class.getName());
+
+    /**
+     * Результат сравнения вместе с именем контрагента, замерами времени и замечаниями при разборе файлов.
+     *
+     * @param prihodRashod   true, если сравнивались накладные по товарам, а не акты сверки
+     * @param mismatchedKeys Количество дат (для накладных - товаров) с расхождениями
+     */
+    public record Outcome(String counterpartyName, ComparisonResult result, StageTimings timings,
+                          ParseDiagnostics diagnostics, boolean prihodRashod, int mismatchedKeys) {
+    }
+
+    public static Outcome run(File[] files, boolean compareByAbsoluteValue) throws Exception {
+        return run(files, new ComparisonSettings(compareByAbsoluteValue, false));
+    }
+
+    public static Outcome run(File[] files, ComparisonSettings settings) throws Exception {
+        return run(files, settings, null);
+    }
+
+    /**
+     * @param listener получает расхождения по датам по мере сравнения (может быть null)
+     */
+    public static Outcome run(File[] files, ComparisonSettings settings, DateMismatchListener listener) throws Exception {
+        return run(files, settings, listener, Map.of());
+    }
+
+    /**
+     * Сравнение файлов, акты которых уже разобраны (пакетная сверка): такие файлы повторно не читаются.
+     *
+     * @param parsedActs Разобранные акты по файлам; файлы, которых нет в карте, загружаются как обычно
+     */
+    static Outcome runParsed(File[] files, ComparisonSettings settings, Map<File, ParseCache.Entry> parsedActs) throws Exception {
+        return run(files, settings, null, parsedActs);
+    }
+
+    private static Outcome run(File[] files, ComparisonSettings settings, DateMismatchListener listener,
+                               Map<File, ParseCache.Entry> parsedActs) throws Exception {
+        StageTimings timings = new StageTimings();
+        ParseDiagnostics diagnostics = new ParseDiagnostics();
+        List<LoadedWorkbook> workbooks = new ArrayList<>();
+        try {
+            workbooks.addAll(ParallelTasks.map(Arrays.asList(files), file -> parsedActs.containsKey(file)
+                    ? LoadedWorkbook.parsed(file, timings, parsedActs.get(file))
+                    : LoadedWorkbook.load(file, timings, settings.getParserEngine(), settings.getParseCache())));
+
+            String counterpartyName = timings.measure("поиск контрагента",
+                    () -> ExcelComparator.findCounterpartyName(workbooks, diagnostics));
+
+            ExcelComparator.ParsedActs parsed = timings.measure("парсинг",
+                    () -> ExcelComparator.parseWorkbooks(workbooks, settings, diagnostics));
+            if (settings.isComparePrihodRashod() && !parsed.prihodRashod()) {
+                // Сравнение по товарам возможно только для накладных, а тип файлов определяется по заголовкам
+                throw new IllegalArgumentException("Выбрано сравнение накладных по товарам, но файлы "
+                        + String.join(" и ", parsed.acts().keySet()) + " распознаны как акты сверки");
+            }
+            boolean prihodRashod = parsed.prihodRashod();
+
+            ComparisonResult result = timings.measure("сравнение",
+                    () -> ExcelComparator.compareDataInMegaMap(parsed.acts(), settings.isCompareByAbsoluteValue(),
+                            prihodRashod, listener, diagnostics));
+
+            logger.info(timings.summary());
+            if (!diagnostics.isEmpty()) {
+                logger.info(diagnostics.summary());
+            }
+            return new Outcome(counterpartyName, result, timings, diagnostics, prihodRashod,
+                    mismatchedKeys(parsed, prihodRashod, result));
+        } finally {
+            workbooks.forEach(LoadedWorkbook::close);
+            // Одно сообщение на сравнение, даже если оно прервалось ошибкой
+            if (diagnostics.hasProblems()) {
+                settings.getErrorSink().report(diagnostics.render(), null);
+            }
+        }
+    }
+
+    // В накладных в таблицу "merged" попадают только товары, суммы которых в файлах различаются
+    private static int mismatchedKeys(ExcelComparator.ParsedActs parsed, boolean prihodRashod, ComparisonResult result) {
+        if (prihodRashod) {
+            ActTable merged = parsed.acts().get("merged");
+            return merged != null ? merged.groupCount() : 0;
+        }
+        return result.detailedData() != null ? result.detailedData().mismatches().size() : 0;
+    }
+}
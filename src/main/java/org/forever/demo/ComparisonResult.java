@@ -15,21 +15,23 @@ public record ComparisonResult(List<String> summaryLines,
     /**
      * Вложенный класс для хранения данных, необходимых для детального просмотра.
      *
-     * @param file1Data  Исходные данные из файла 1 (ключ - дата/продукт)
-     * @param file2Data  Исходные данные из файла 2 (ключ - дата/продукт)
+     * @param file1Data  Исходные данные из файла 1 (строки, сгруппированные по дате/продукту)
+     * @param file2Data  Исходные данные из файла 2 (строки, сгруппированные по дате/продукту)
      * @param mismatches Информация о несовпадениях для подсветки
      */
-        public record DetailedComparisonData(Map<String, List<List<String>>> file1Data,
-                                             Map<String, List<List<String>>> file2Data,
+        public record DetailedComparisonData(ActTable file1Data,
+                                             ActTable file2Data,
                                              Map<String, MismatchInfo> mismatches) {
     }
 
     /**
      * Вложенный класс для хранения уникальных значений по ключу (дате/продукту).
      *
-     * @param uniqueRowsFile1 Строки, которые есть в файле 1, но отсутствуют (или их меньше) в файле 2
-     * @param uniqueRowsFile2 Строки, которые есть в файле 2, но отсутствуют (или их меньше) в файле 1
+     * @param uniqueRowsFile1 Номера строк file1Data (по возрастанию), которые есть в файле 1,
+     *                        но отсутствуют (или их меньше) в файле 2
+     * @param uniqueRowsFile2 Номера строк file2Data (по возрастанию), которые есть в файле 2,
+     *                        но отсутствуют (или их меньше) в файле 1
      */
-        public record MismatchInfo(List<List<String>> uniqueRowsFile1, List<List<String>> uniqueRowsFile2) {
+        public record MismatchInfo(int[] uniqueRowsFile1, int[] uniqueRowsFile2) {
     }
 }
\ No newline at end of file
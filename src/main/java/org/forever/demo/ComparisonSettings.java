@@ -2,6 +2,9 @@ package org.forever.demo;
 public class ComparisonSettings {
     private boolean compareByAbsoluteValue;
     private boolean comparePrihodRashod;
+    private ParserEngine parserEngine = ParserEngine.AUTO;
+    private ErrorSink errorSink = ErrorSink.LOGGING;
+    private ParseCache parseCache = ParseCache.shared();
 
     public ComparisonSettings(boolean compareByAbsoluteValue, boolean comparePrihodRashod) {
         this.compareByAbsoluteValue = compareByAbsoluteValue;
@@ -23,4 +26,29 @@ public class ComparisonSettings {
     public void setComparePrihodRashod(boolean comparePrihodRashod) {
         this.comparePrihodRashod = comparePrihodRashod;
     }
-}
\ No newline at end of file
+
+    public ParserEngine getParserEngine() {
+        return parserEngine;
+    }
+
+    public void setParserEngine(ParserEngine parserEngine) {
+        this.parserEngine = parserEngine;
+    }
+
+    public ErrorSink getErrorSink() {
+        return errorSink;
+    }
+
+    public void setErrorSink(ErrorSink errorSink) {
+        this.errorSink = errorSink;
+    }
+
+    // null - кэш разбора не используется
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+}
@@ -0,0 +1,56 @@
+package org.forever.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Хеш содержимого файла для ключей кэшей (ParseCache, ConversionCache):
+ * одинаковые файлы под разными именами дают один ключ, измененный файл - другой.
+ */
+public final class ContentHash {
+
+    private static final int BUFFER = 64 * 1024;
+    // Файлы больше этого размера отображаются в память окнами по MAP_WINDOW байт
+    private static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private ContentHash() {
+    }
+
+    // SHA-256 содержимого в виде 64 шестнадцатеричных символов
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                // Большие выгрузки хешируются прямо из отображенной памяти, без копирования в буфер на куче
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
+                }
+            } else {
+                // Маленькие файлы быстрее прочитать: отображение в память стоит дороже самого чтения
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
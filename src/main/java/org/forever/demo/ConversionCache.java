@@ -0,0 +1,107 @@
+package org.forever.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Кэш конвертаций Excel 5.0/7.0 (BIFF5) в XLSX. Конвертация через LibreOffice или Excel занимает
+ * несколько секунд, поэтому каждый файл конвертируется один раз: результат сохраняется под SHA-256
+ * исходного файла и при следующих сравнениях берется готовым, даже если файл переименован.
+ * <p>
+ * Кэш лежит в личной папке пользователя (папка biff5 в CacheDirectories.root()), а не рядом с исходным файлом.
+ * Записи старше MAX_AGE удаляются, а если общий размер больше MAX_BYTES, удаляются давно не использованные.
+ */
+public final class ConversionCache {
+    private static final Logger logger = Logger.getLogger(ConversionCache.class.getName());
+
+    private static final long MAX_BYTES = 512L * 1024 * 1024;
+    private static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private static final String EXTENSION = ".xlsx";
+    private static final String WORK_PREFIX = "work-";
+    private static final long WORK_STALE_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Один и тот же файл не конвертируется одновременно в двух потоках
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static volatile boolean cleaned;
+
+    private ConversionCache() {
+    }
+
+    /**
+     * XLSX-версия файла BIFF5: из кэша или после конвертации.
+     * Возвращенный файл принадлежит кэшу - его нельзя изменять или удалять.
+     */
+    public static File convert(File source) throws Exception {
+        return convert(source, directory());
+    }
+
+    // То же в указанной папке кэша
+    static File convert(File source, Path directory) throws Exception {
+        cleanUpOnce(directory);
+
+        String hash = ContentHash.sha256(source);
+        Path cached = directory.resolve(hash + EXTENSION);
+        synchronized (LOCKS.computeIfAbsent(hash, _ -> new Object())) {
+            if (Files.isRegularFile(cached) && Files.size(cached) > 0) {
+                // Время изменения - время последнего использования, по нему вытесняются старые записи
+                CacheDirectories.touch(cached);
+                logger.info("Конвертированный файл взят из кэша: " + source.getName());
+                return cached.toFile();
+            }
+
+            // LibreOffice называет результат по имени исходного файла, поэтому у каждой конвертации своя папка
+            Path work = Files.createTempDirectory(directory, WORK_PREFIX);
+            try {
+                File converted = ExcelConverter.convertBiff5ToXlsx(source, work.toFile());
+                moveIntoPlace(converted.toPath(), cached);
+            } finally {
+                CacheDirectories.deleteRecursively(work);
+            }
+        }
+        evict(directory);
+        return cached.toFile();
+    }
+
+    // Папка кэша; создается при первом обращении и доступна только текущему пользователю
+    static Path directory() throws IOException {
+        return CacheDirectories.directory("biff5");
+    }
+
+    private static void moveIntoPlace(Path converted, Path cached) throws IOException {
+        try {
+            Files.move(converted, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(converted, cached, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // При первом обращении за запуск: вытеснение и удаление папок прерванных конвертаций
+    private static void cleanUpOnce(Path directory) {
+        if (cleaned) {
+            return;
+        }
+        cleaned = true;
+        try (Stream<Path> paths = Files.list(directory)) {
+            // Свежие папки не трогаем: в них может идти конвертация в другом экземпляре программы
+            long stale = System.currentTimeMillis() - WORK_STALE_MILLIS;
+            for (Path work : paths.filter(path -> path.getFileName().toString().startsWith(WORK_PREFIX)).toList()) {
+                if (Files.getLastModifiedTime(work).toMillis() < stale) {
+                    CacheDirectories.deleteRecursively(work);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Не удалось очистить кэш конвертаций", e);
+        }
+        evict(directory);
+    }
+
+    static void evict(Path directory) {
+        CacheDirectories.evict(directory, EXTENSION, MAX_BYTES, MAX_AGE_MILLIS);
+    }
+}
@@ -0,0 +1,24 @@
+package org.forever.demo;
+
+import java.util.List;
+
+/**
+ * Получатель результатов сравнения актов по мере их появления.
+ * Даты с расхождениями приходят в хронологическом порядке, по одной.
+ */
+@FunctionalInterface
+public interface DateMismatchListener {
+
+    /**
+     * @param dateKey      Дата "dd.MM.yyyy"
+     * @param summaryLines Строки сводки по этой дате (вместе с заголовком "Различия найдены для даты")
+     * @param mismatch     Несовпавшие строки обоих файлов
+     */
+    void onDateMismatch(String dateKey, List<String> summaryLines, ComparisonResult.MismatchInfo mismatch);
+
+    /**
+     * Доля уже сравненных дат (от 0 до 1). Вызывается после каждой даты, в том числе без расхождений.
+     */
+    default void onProgress(double comparedFraction) {
+    }
+}
@@ -0,0 +1,313 @@
+package org.forever.demo;
+
+import javafx.beans.value.ObservableBooleanValue;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Text;
+import org.forever.demo.ComparisonResult.MismatchInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Детальный просмотр строк одного файла в окне расхождений.
+ * Строится на ListView: узлы создаются только для видимых строк и переиспользуются при прокрутке,
+ * поэтому стоимость отрисовки не зависит от размера акта. Модель - плоский список элементов
+ * (заголовок даты, итоговая строка, обычная строка) поверх ActTable, без копирования ячеек.
+ */
+public class DetailedActView {
+
+    private static final String DATE_HEADER_STYLE = "-fx-fill: #b3340f; -fx-font-weight: bold; -fx-font-size: 14px;";
+    private static final String BORDER_BOTTOM = "-fx-border-color: #515658; -fx-border-width: 0 0 1px 0;";
+    private static final String CELL_BORDER = "-fx-border-color: #515658; -fx-border-width: 0 1px 1px 1px;";
+    // Ширина колонок: только короткие значения (числа и даты) и текст
+    private static final double SHORT_CELL_WIDTH = 120;
+    private static final double LONG_CELL_WIDTH = 380;
+    // Ширина, в рамках которой переносится текст итоговой строки
+    private static final double SUMMARY_WRAPPING_WIDTH = 550;
+    private static final Pattern DATE_PATTERN = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2,4}");
+
+    enum Kind {DATE_HEADER, SUMMARY, ROW}
+
+    /**
+     * Элемент списка.
+     *
+     * @param kind        Вид элемента
+     * @param key         Ключ группы (дата), к которой относится элемент
+     * @param row         Номер строки в ActTable (-1 для заголовка даты)
+     * @param highlighted Строка не нашла пары в другом файле
+     */
+    record Item(Kind kind, String key, int row, boolean highlighted) {
+    }
+
+    private final ActTable fileData;
+    private final String textStyle;
+    private final String highlightStyle;
+    private final ListView<Item> listView = new ListView<>();
+    // Позиция элемента списка для строки таблицы и для заголовка даты
+    private final int[] itemOfRow;
+    private final Map<String, Integer> headerItems = new HashMap<>();
+    // Ширина каждой колонки, общая для всех строк таблицы, чтобы колонки соседних строк совпадали
+    private final double[] columnWidths;
+
+    /**
+     * @param fileData       Данные для отображения (строки, сгруппированные по дате).
+     * @param mismatches     Информация о несовпадениях для подсветки.
+     * @param isFile1        True, если это данные для файла 1 (для выбора несовпавших строк).
+     * @param textStyle      Стиль обычного текста.
+     * @param highlightStyle Стиль несовпавших строк.
+     */
+    public DetailedActView(ActTable fileData, Map<String, MismatchInfo> mismatches, boolean isFile1,
+                           String textStyle, String highlightStyle) {
+        this.fileData = fileData;
+        this.textStyle = textStyle;
+        this.highlightStyle = highlightStyle + " -fx-font-weight: bold;";
+        this.itemOfRow = new int[fileData.rowCount()];
+
+        List<Item> items = buildItems(mismatches, isFile1);
+        this.columnWidths = columnWidths(items);
+        listView.getItems().setAll(items);
+        listView.setCellFactory(_ -> new ActRowCell());
+        listView.getStyleClass().add("detailed-list-view");
+    }
+
+    public ListView<Item> getListView() {
+        return listView;
+    }
+
+    // Позиция строки таблицы в списке
+    public int itemIndexOf(int row) {
+        return itemOfRow[row];
+    }
+
+    // Позиция заголовка даты в списке или -1, если такой даты в файле нет
+    public int headerIndexOf(String key) {
+        return headerItems.getOrDefault(key, -1);
+    }
+
+    /**
+     * Прокручивает список так, чтобы элемент был виден вместе с несколькими строками перед ним
+     * (но не выше заголовка его даты), и выделяет его.
+     */
+    public void showItem(int index) {
+        int header = headerIndexOf(listView.getItems().get(index).key());
+        listView.scrollTo(Math.max(header, index - 3));
+        listView.getSelectionModel().clearAndSelect(index);
+    }
+
+    // Прокручивает список к заголовку даты; false, если такой даты в файле нет
+    public boolean showDate(String key) {
+        int index = headerIndexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        listView.scrollTo(index);
+        return true;
+    }
+
+    // Дата первой видимой строки или null, пока список не отрисован
+    public String firstVisibleKey() {
+        if (!(listView.lookup(".virtual-flow") instanceof VirtualFlow<?> flow)) {
+            return null;
+        }
+        ListCell<?> cell = (ListCell<?>) flow.getFirstVisibleCell();
+        if (cell == null || !(cell.getItem() instanceof Item item)) {
+            return null;
+        }
+        return item.key();
+    }
+
+    /**
+     * Синхронная прокрутка двух списков: когда в одном из них первой видимой становится другая дата,
+     * второй прокручивается к заголовку этой даты. Внутри одной даты списки прокручиваются независимо.
+     *
+     * @param enabled Включена ли синхронизация (например, флажок в окне)
+     */
+    public static void synchronize(DetailedActView first, DetailedActView second, ObservableBooleanValue enabled) {
+        ScrollSync sync = new ScrollSync(enabled);
+        sync.follow(first, second);
+        sync.follow(second, first);
+    }
+
+    private static final class ScrollSync {
+        private final ObservableBooleanValue enabled;
+        // Дата, к которой списки приведены последней синхронизацией
+        private String syncedKey;
+
+        ScrollSync(ObservableBooleanValue enabled) {
+            this.enabled = enabled;
+        }
+
+        void follow(DetailedActView source, DetailedActView target) {
+            // VirtualFlow появляется только вместе со скином списка
+            source.listView.skinProperty().addListener((_, _, _) -> {
+                if (source.listView.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+                    flow.positionProperty().addListener((_, _, _) -> onScroll(source, target));
+                }
+            });
+        }
+
+        private void onScroll(DetailedActView source, DetailedActView target) {
+            if (!enabled.get()) {
+                return;
+            }
+            String key = source.firstVisibleKey();
+            // Дата не сменилась или это отклик на прокрутку, сделанную самой синхронизацией
+            if (key == null || key.equals(syncedKey)) {
+                return;
+            }
+            syncedKey = key;
+            target.showDate(key);
+        }
+    }
+
+    // Даты в хронологическом порядке, как и в сводке сравнения
+    private List<Item> buildItems(Map<String, MismatchInfo> mismatches, boolean isFile1) {
+        List<Item> items = new ArrayList<>(fileData.rowCount() + fileData.groupCount());
+        for (ActTable.Group group : fileData.chronologicalGroups()) {
+            headerItems.put(group.key(), items.size());
+            items.add(new Item(Kind.DATE_HEADER, group.key(), -1, false));
+
+            MismatchInfo mismatchInfo = mismatches.get(group.key());
+            // Номера несовпавших строк отсортированы, поэтому проверяем их двоичным поиском
+            int[] uniqueRows = (mismatchInfo != null)
+                    ? (isFile1 ? mismatchInfo.uniqueRowsFile1() : mismatchInfo.uniqueRowsFile2())
+                    : new int[0];
+
+            for (int tableRow : group.rows()) {
+                boolean highlighted = Arrays.binarySearch(uniqueRows, tableRow) >= 0;
+                // Итоговая/описательная строка: одна ячейка, и она не является числом
+                boolean summary = fileData.cellCount(tableRow) == 1 && fileData.amount(tableRow, 0) == ActTable.NOT_AMOUNT;
+                itemOfRow[tableRow] = items.size();
+                items.add(new Item(summary ? Kind.SUMMARY : Kind.ROW, group.key(), tableRow, highlighted));
+            }
+        }
+        return items;
+    }
+
+    // Колонка широкая, если хотя бы в одной обычной строке в ней есть текст (не число и не дата)
+    private double[] columnWidths(List<Item> items) {
+        int columnCount = 0;
+        for (Item item : items) {
+            if (item.kind() == Kind.ROW) {
+                columnCount = Math.max(columnCount, fileData.cellCount(item.row()));
+            }
+        }
+        double[] widths = new double[columnCount];
+        Arrays.fill(widths, SHORT_CELL_WIDTH);
+        for (Item item : items) {
+            if (item.kind() != Kind.ROW) {
+                continue;
+            }
+            int row = item.row();
+            for (int col = 0; col < fileData.cellCount(row); col++) {
+                if (widths[col] == SHORT_CELL_WIDTH && !isShortContent(row, col)) {
+                    widths[col] = LONG_CELL_WIDTH;
+                }
+            }
+        }
+        return widths;
+    }
+
+    private boolean isShortContent(int row, int col) {
+        return fileData.amount(row, col) != ActTable.NOT_AMOUNT || DATE_PATTERN.matcher(fileData.text(row, col)).lookingAt();
+    }
+
+    /**
+     * Ячейка списка. Узлы для заголовка, итоговой строки и колонок создаются один раз
+     * и при прокрутке только получают новый текст и стиль.
+     */
+    private final class ActRowCell extends ListCell<Item> {
+        private final Text headerText = new Text();
+        private final StackPane headerPane = new StackPane(headerText);
+
+        private final Text summaryText = new Text();
+        private final StackPane summaryPane = new StackPane(summaryText);
+
+        private final HBox rowBox = new HBox();
+        // Колонки строки; добавляются по мере встречи строк с большим числом ячеек
+        private final List<StackPane> columns = new ArrayList<>();
+
+        ActRowCell() {
+            headerText.setStyle(DATE_HEADER_STYLE);
+            headerPane.setPadding(new Insets(10, 0, 5, 0));
+            headerPane.setAlignment(Pos.CENTER_LEFT);
+            headerPane.setStyle(BORDER_BOTTOM);
+
+            summaryText.setWrappingWidth(SUMMARY_WRAPPING_WIDTH);
+            summaryPane.setAlignment(Pos.CENTER_LEFT);
+            summaryPane.setPadding(new Insets(8, 8, 8, 8));
+            summaryPane.setStyle(BORDER_BOTTOM);
+
+            setPadding(Insets.EMPTY);
+        }
+
+        @Override
+        protected void updateItem(Item item, boolean empty) {
+            super.updateItem(item, empty);
+            setText(null);
+            if (empty || item == null) {
+                setGraphic(null);
+                return;
+            }
+
+            switch (item.kind()) {
+                case DATE_HEADER -> {
+                    headerText.setText(item.key());
+                    setGraphic(headerPane);
+                }
+                case SUMMARY -> {
+                    summaryText.setText(fileData.text(item.row(), 0));
+                    summaryText.setStyle(item.highlighted() ? highlightStyle : textStyle);
+                    setGraphic(summaryPane);
+                }
+                case ROW -> {
+                    fillRow(item);
+                    setGraphic(rowBox);
+                }
+            }
+        }
+
+        private void fillRow(Item item) {
+            int row = item.row();
+            int cellCount = fileData.cellCount(row);
+            while (columns.size() < cellCount) {
+                columns.add(createColumn());
+            }
+
+            String style = item.highlighted() ? highlightStyle : textStyle;
+            for (int col = 0; col < cellCount; col++) {
+                StackPane column = columns.get(col);
+                Text cellText = (Text) column.getChildren().getFirst();
+                cellText.setText(fileData.text(row, col));
+                cellText.setStyle(style);
+
+                double width = columnWidths[col];
+                column.setPrefWidth(width);
+                column.setMinWidth(width);
+                // Текст длиннее колонки переносится, а не раздвигает ее
+                cellText.setWrappingWidth(width - 16);
+            }
+            rowBox.getChildren().setAll(columns.subList(0, cellCount));
+        }
+
+        private StackPane createColumn() {
+            StackPane column = new StackPane(new Text());
+            column.setAlignment(Pos.TOP_LEFT);
+            column.setStyle(CELL_BORDER);
+            column.setPadding(new Insets(5, 8, 5, 8));
+            column.setMaxWidth(Region.USE_PREF_SIZE);
+            return column;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.forever.demo;
+
+import java.io.File;
+
+/**
+ * Конвертация старой книги Excel в XLSX внешней программой (LibreOffice, Excel).
+ * ExcelConverter вызывает конвертер через этот интерфейс, поэтому вместо офиса можно подставить
+ * другую реализацию - например, копирующую готовый XLSX при проверке без установленного офиса.
+ */
+@FunctionalInterface
+public interface DocumentConverter {
+
+    /**
+     * @param source    Исходный файл
+     * @param outputDir Папка для результата (ничего другого в ней конвертер не создает)
+     * @return сконвертированный файл в outputDir
+     */
+    File convertToXlsx(File source, File outputDir) throws Exception;
+}
@@ -0,0 +1,25 @@
+package org.forever.demo;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Куда движок сравнения сообщает об ошибках при чтении файлов.
+ * Сам движок ничего не показывает: окно программы подключает сюда вывод Alert,
+ * а командная строка и пакетная сверка обходятся записью в лог.
+ * Замечания парсеров (ParseDiagnostics) приходят сюда одним сообщением в конце сравнения.
+ */
+@FunctionalInterface
+public interface ErrorSink {
+
+    // Только запись в лог - для работы без интерфейса
+    ErrorSink LOGGING = (message, e) -> Logger.getLogger(ExcelComparator.class.getName()).log(Level.SEVERE, message, e);
+
+    // e может быть null, если ошибка не связана с исключением
+    void report(String message, Exception e);
+
+    // Текст исключения для пользователя: у исключений без сообщения (например, NullPointerException) - имя класса
+    static String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+}
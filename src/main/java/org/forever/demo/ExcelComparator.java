@@ -1,153 +1,149 @@
 package org.forever.demo;
 
-import javafx.application.Platform;
-import javafx.scene.control.Alert;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.forever.demo.ComparisonResult.DetailedComparisonData;
 import org.forever.demo.ComparisonResult.MismatchInfo;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.function.Function;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class ExcelComparator {
 
-    public static Map<String, Map<String, List<List<String>>>> parseFiles(File[] files, ComparisonSettings settings) {
-        Map<String, Map<String, List<List<String>>>> megaMap = new LinkedHashMap<>();
-        Set<File> filesRequiringSpecialParsing = new HashSet<>();
-
-        // Первый проход - обрабатываем все файлы обычным способом
-        for (File file : files) {
-            try {
-                // Используем WorkbookFactory для автоматического определения формата
-                try (InputStream is = new FileInputStream(file);
-                     Workbook workbook = WorkbookFactory.create(is)) {
-
-                    boolean requiresSpecialParsing = processWorkbook(workbook, file, megaMap, settings);
-                    if (requiresSpecialParsing) {
-                        filesRequiringSpecialParsing.add(file);
-                        // Удаляем данные этого файла из megaMap, так как его будем обрабатывать особым образом
-                        megaMap.remove(file.getName());
-                    }
-                }
-            } catch (Exception e) {
-                // Проверяем сообщение об ошибке на наличие ключевых слов
-                String errorMessage = e.getMessage() != null ? e.getMessage() : "";
-                boolean isOffice2007XMLError = errorMessage.contains("Office 2007+ XML") ||
-                        errorMessage.contains("OLE2") ||
-                        errorMessage.contains("XSSF instead of HSSF");
-
-                if (isOffice2007XMLError) {
-                    // Пытаемся обработать файл как XLSX
-                    try {
-                        // Создаем временную копию с правильным расширением
-                        String baseName = FilenameUtils.getBaseName(file.getName());
-                        // Проверяем, что длина префикса не меньше 3 символов
-                        if (baseName.length() < 3) {
-                            // Дополняем имя, чтобы оно соответствовало требованиям
-                            baseName = baseName + "___"; // или baseName + System.currentTimeMillis();
-                        }
-                        File tempFile = File.createTempFile(baseName, ".xlsx");
-                        tempFile.deleteOnExit();
+    // Причины пропуска строк для ParseDiagnostics
+    static final String NO_DATE = "нет даты";
+    static final String NO_PERIOD_DATE = "нет даты в колонке периода";
 
-                        // Копируем содержимое исходного файла
-                        FileUtils.copyFile(file, tempFile);
-
-                        // Пробуем открыть как XLSX
-                        try (FileInputStream fis = new FileInputStream(tempFile);
-                             Workbook workbook = new XSSFWorkbook(fis)) {
+    public static Map<String, ActTable> parseFiles(File[] files, ComparisonSettings settings) {
+        StageTimings timings = new StageTimings();
+        List<LoadedWorkbook> workbooks = new ArrayList<>();
+        try {
+            workbooks.addAll(LoadedWorkbook.loadAll(files, timings, settings.getParserEngine(), settings.getParseCache()));
+            return parseWorkbooks(workbooks, settings, new ParseDiagnostics()).acts();
+        } finally {
+            workbooks.forEach(LoadedWorkbook::close);
+        }
+    }
 
-                            boolean requiresSpecialParsing = processWorkbook(workbook, file, megaMap, settings);
-                            if (requiresSpecialParsing) {
-                                filesRequiringSpecialParsing.add(file);
-                                megaMap.remove(file.getName());
-                            }
-                        }
-                    } catch (Exception tempEx) {
-                        // Пробуем конвертировать старый формат
-                        try {
-                            ExcelConverter.ExcelFileInfo fileInfo = ExcelConverter.checkExcelVersion(file);
-                            if (fileInfo.isConvertible()) {
-                                File convertedFile = ExcelConverter.convertBiff5ToXlsx(file);
-                                convertedFile.deleteOnExit();
-
-                                try (FileInputStream fis = new FileInputStream(convertedFile);
-                                     Workbook workbook = new XSSFWorkbook(fis)) {
-
-                                    boolean requiresSpecialParsing = processWorkbook(workbook, file, megaMap, settings);
-                                    if (requiresSpecialParsing) {
-                                        filesRequiringSpecialParsing.add(file);
-                                        megaMap.remove(file.getName());
-                                    }
-                                }
-                            } else {
-                                logAndShowError("Не удалось открыть файл: " + file.getName(), tempEx);
-                                filesRequiringSpecialParsing.add(file); // Пометим как требующий специальной обработки
-                            }
-                        } catch (Exception convEx) {
-                            logAndShowError("Ошибка при конвертации файла: " + file.getName(), convEx);
-                            filesRequiringSpecialParsing.add(file); // Пометим как требующий специальной обработки
-                        }
-                    }
-                } else if (errorMessage.contains("BIFF5") || errorMessage.contains("Excel 5.0/7.0")) {
-                    // Конвертируем старый формат Excel
-                    try {
-                        File convertedFile = ExcelConverter.convertBiff5ToXlsx(file);
-                        convertedFile.deleteOnExit();
+    // Результат обычного парсинга одного файла
+    private record ParsedFile(LoadedWorkbook loaded, ActTable fileData,
+                              boolean requiresSpecialParsing) {
+    }
 
-                        try (FileInputStream fis = new FileInputStream(convertedFile);
-                             Workbook workbook = new XSSFWorkbook(fis)) {
+    /**
+     * Результат парсинга файлов сравнения.
+     *
+     * @param acts         Имя файла -> данные; для накладных - одна запись "merged" с товарами, суммы которых расходятся
+     * @param prihodRashod true, если среди файлов найдены накладные и сравнивать нужно по товарам
+     */
+    public record ParsedActs(Map<String, ActTable> acts, boolean prihodRashod) {
+    }
 
-                            boolean requiresSpecialParsing = processWorkbook(workbook, file, megaMap, settings);
-                            if (requiresSpecialParsing) {
-                                filesRequiringSpecialParsing.add(file);
-                                megaMap.remove(file.getName());
-                            }
-                        }
-                    } catch (Exception convEx) {
-                        logAndShowError("Ошибка при конвертации файла: " + file.getName(), convEx);
-                        filesRequiringSpecialParsing.add(file); // Пометим как требующий специальной обработки
-                    }
-                } else {
-                    // Другая ошибка
-                    logAndShowError("Ошибка при работе с файлом: " + file.getName(), e);
-                    filesRequiringSpecialParsing.add(file); // Пометим как требующий специальной обработки
-                }
+    // Парсинг уже загруженных книг: каждая книга открыта ровно один раз на всё сравнение.
+    // Нечитаемые файлы и пропущенные строки записываются в diagnostics. Настройки не изменяются -
+    // найденный режим сравнения возвращается в результате, поэтому одни настройки можно использовать из разных потоков
+    public static ParsedActs parseWorkbooks(List<LoadedWorkbook> workbooks, ComparisonSettings settings,
+                                            ParseDiagnostics diagnostics) {
+        Map<String, ActTable> megaMap = new LinkedHashMap<>();
+        List<LoadedWorkbook> workbooksRequiringSpecialParsing = new ArrayList<>();
+
+        // Первый проход - файлы независимы, поэтому разбираются параллельно
+        List<ParsedFile> parsedFiles = ParallelTasks.map(workbooks, loaded -> parseWorkbook(loaded, settings, diagnostics));
+
+        // Результаты собираем в порядке входных файлов
+        for (ParsedFile parsed : parsedFiles) {
+            if (parsed.requiresSpecialParsing()) {
+                workbooksRequiringSpecialParsing.add(parsed.loaded());
+                // Удаляем данные этого файла из megaMap, так как его будем обрабатывать особым образом
+                megaMap.remove(parsed.loaded().getName());
+            } else if (!parsed.fileData().isEmpty()) {
+                megaMap.put(parsed.loaded().getName(), parsed.fileData());
             }
         }
 
         // Если есть файлы, требующие специального парсинга, обрабатываем только их
-        if (!filesRequiringSpecialParsing.isEmpty()) {
-            settings.setComparePrihodRashod(true);
-
-            // Преобразуем Set в массив для вызова parseFilesPrihodRashod
-            File[] specialFiles = filesRequiringSpecialParsing.toArray(new File[0]);
-            Map<String, Map<String, List<List<String>>>> specialParsedMap = parseFilesPrihodRashod(specialFiles);
+        if (!workbooksRequiringSpecialParsing.isEmpty()) {
+            Map<String, ActTable> specialParsedMap = parseWorkbooksPrihodRashod(workbooksRequiringSpecialParsing, diagnostics);
 
             // Объединяем результаты обычного и специального парсинга
             megaMap.putAll(specialParsedMap);
+            return new ParsedActs(megaMap, true);
         }
 
-        return megaMap;
+        return new ParsedActs(megaMap, false);
     }
 
-    // Вспомогательный метод для обработки workbook
-    private static boolean processWorkbook(Workbook workbook, File originalFile,
-                                           Map<String, Map<String, List<List<String>>>> megaMap,
-                                           ComparisonSettings settings) {
+    /**
+     * Обычный парсинг одного файла без специального парсинга накладных. Распознанный акт
+     * также сохраняется в кэш разбора, если он есть.
+     *
+     * @return акт вместе с контрагентом и пропущенными строками или null, если файл не распознан
+     *         как акт (накладные и файлы с ошибками разбираются только при сравнении)
+     */
+    public static ParseCache.Entry parseAct(LoadedWorkbook loaded, ComparisonSettings settings, ParseDiagnostics diagnostics) {
+        ParsedFile parsed = parseWorkbook(loaded, settings, diagnostics);
+        if (parsed.requiresSpecialParsing()) {
+            return null;
+        }
+        String counterpartyName = findCounterpartyName(List.of(loaded), diagnostics);
+        return new ParseCache.Entry(parsed.fileData(), "КОНТРАГЕНТ НЕ НАЙДЕН".equals(counterpartyName) ? null : counterpartyName,
+                diagnostics.getSkippedRows(loaded.getName()));
+    }
+
+    // Обычный парсинг одного файла. Не трогает общих данных, поэтому может выполняться в отдельном потоке
+    private static ParsedFile parseWorkbook(LoadedWorkbook loaded, ComparisonSettings settings, ParseDiagnostics diagnostics) {
+        // Этот акт уже разбирался - книга даже не открыта
+        ParseCache.Entry cached = loaded.cachedAct();
+        if (cached != null) {
+            cached.skippedRows().forEach((cause, count) -> diagnostics.skippedRows(loaded.getName(), cause, count));
+            return new ParsedFile(loaded, cached.table(), false);
+        }
+
+        // Большие файлы уже разобраны потоково, без загрузки книги
+        ActRowParser streamedAct = loaded.streamedAct();
+        if (streamedAct != null) {
+            diagnostics.addAll(streamedAct.getDiagnostics());
+            if (streamedAct.isRecognized()) {
+                loaded.rememberAct(streamedAct.getFileData(), streamedAct.getCounterpartyName(),
+                        streamedAct.getDiagnostics().getSkippedRows(loaded.getName()));
+            }
+            return new ParsedFile(loaded, streamedAct.getFileData(), !streamedAct.isRecognized());
+        }
+
+        if (loaded.getWorkbook() == null) {
+            diagnostics.fileError(loaded.getName(), loaded.getErrorMessage(), loaded.getError());
+            return new ParsedFile(loaded, ActTable.empty(), true); // Пометим как требующий специальной обработки
+        }
+        try {
+            ParseDiagnostics fileDiagnostics = new ParseDiagnostics();
+            ActTable fileData = processWorkbook(loaded.getWorkbook(), loaded.getName(), fileDiagnostics);
+            diagnostics.addAll(fileDiagnostics);
+            if (fileData != null && loaded.isCacheable()) {
+                rememberAct(loaded, fileData, fileDiagnostics);
+            }
+            return new ParsedFile(loaded, fileData != null ? fileData : ActTable.empty(), fileData == null);
+        } catch (Exception e) {
+            diagnostics.fileError(loaded.getName(), "Ошибка при работе с файлом: " + loaded.getName(), e);
+            return new ParsedFile(loaded, ActTable.empty(), true); // Пометим как требующий специальной обработки
+        }
+    }
+
+    // Сохраняет разобранный акт в кэш вместе с контрагентом, чтобы при попадании в кэш книга не открывалась совсем
+    private static void rememberAct(LoadedWorkbook loaded, ActTable fileData, ParseDiagnostics fileDiagnostics) {
+        String counterpartyName;
+        try {
+            counterpartyName = findNameInSheet(loaded.getWorkbook().getSheetAt(0));
+        } catch (Exception e) {
+            return; // Без контрагента запись неполная - файл просто будет разобран в следующий раз
+        }
+        loaded.rememberAct(fileData, counterpartyName, fileDiagnostics.getSkippedRows(loaded.getName()));
+    }
+
+    // Вспомогательный метод для обработки workbook.
+    // Возвращает данные файла или null, если требуется специальный парсинг
+    private static ActTable processWorkbook(Workbook workbook, String fileName, ParseDiagnostics diagnostics) {
         Sheet sheet = workbook.getSheetAt(0);
 
         // Флаги для определения типа файла
@@ -202,54 +198,30 @@ public class ExcelComparator {
         }
 
         // Определяем, какой метод использовать для парсинга
-        Map<String, List<List<String>>> fileData;
+        ActTable fileData;
 
         if (hasDebitCredit) {
-            fileData = parseDebitCreditFile(workbook);
+            fileData = parseDebitCreditFile(workbook, fileName, diagnostics);
         } else if (hasPrihodRashod) {
             // НОВЫЙ файл обрабатываем как Дебет/Кредит
-            fileData = parsePrihodRashodAsDebitCredit(workbook);
+            fileData = parsePrihodRashodAsDebitCredit(workbook, fileName, diagnostics);
         } else if (hasPrihodRashodWithBalance) {
             // Старый файл с остатками
-            fileData = parsePrihodRashodFile(workbook);
+            fileData = parsePrihodRashodFile(workbook, fileName, diagnostics);
         } else if (hasDTKT) {
-            fileData = parseAiS(workbook);
+            fileData = parseAiS(workbook, fileName, diagnostics);
         } else {
-            return true; // Требуется специальный парсинг
-        }
-
-        // Добавляем данные в общий megaMap, только если там есть какие-то данные
-        if (!fileData.isEmpty()) {
-            // Используем уникальный ключ для каждого файла, добавляя временную метку,
-            // чтобы избежать коллизий при одинаковых именах файлов
-            String uniqueKey = originalFile.getName();
-            megaMap.put(uniqueKey, fileData);
+            return null; // Требуется специальный парсинг
         }
 
         // Все обработано нормально, специальный парсинг не требуется
-        return false;
+        return fileData;
     }
 
 
-    // Вспомогательный метод для логирования и отображения ошибок
-    private static void logAndShowError(String message, Exception e) {
-        // Логирование
-        Logger.getLogger(ExcelComparator.class.getName())
-                .log(Level.SEVERE, message, e);
-
-        // Отображение сообщения в UI
-        Platform.runLater(() -> {
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Ошибка");
-            alert.setHeaderText(null);
-            alert.setContentText(message + "\n" + e.getMessage());
-            alert.showAndWait();
-        });
-    }
-
     // Метод для обработки файлов Дебет/Кредит
-    private static Map<String, List<List<String>>> parseDebitCreditFile(Workbook workbook) {
-        Map<String, List<List<String>>> fileData = new LinkedHashMap<>();
+    private static ActTable parseDebitCreditFile(Workbook workbook, String fileName, ParseDiagnostics diagnostics) {
+        ActTable.Builder fileData = new ActTable.Builder();
         Sheet sheet = workbook.getSheetAt(0);
         int startRowIndex = -1;
         int saldoColumnIndex = -1;
@@ -272,7 +244,7 @@ public class ExcelComparator {
         }
 
         if (startRowIndex == -1) {
-            return fileData;
+            return fileData.build();
         }
 
         Pattern datePattern = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2,4}");
@@ -315,14 +287,16 @@ public class ExcelComparator {
 
             // Добавляем строку, только если в ней была найдена дата
             if (dateKey != null) {
-                fileData.computeIfAbsent(dateKey, k -> new ArrayList<>()).add(rowData);
+                fileData.add(dateKey, rowData);
+            } else {
+                diagnostics.skippedRow(fileName, NO_DATE);
             }
         }
-        return fileData;
+        return fileData.build();
     }
 
-    private static Map<String, List<List<String>>> parseAiS(Workbook workbook) {
-        Map<String, List<List<String>>> fileData = new HashMap<>();
+    private static ActTable parseAiS(Workbook workbook, String fileName, ParseDiagnostics diagnostics) {
+        ActTable.Builder fileData = new ActTable.Builder();
         Sheet sheet = workbook.getSheetAt(0);
 
         // Ищем строку с заголовками "Дт" и "Кт"
@@ -343,7 +317,7 @@ public class ExcelComparator {
         }
 
         if (headerRow == -1) {
-            return fileData; // Если нет Дт/Кт, это не наш файл
+            return fileData.build(); // Если нет Дт/Кт, это не наш файл
         }
 
         Pattern datePattern = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2,4}");
@@ -404,15 +378,17 @@ public class ExcelComparator {
             }
 
             if (dateKey != null) {
-                fileData.computeIfAbsent(dateKey, _ -> new ArrayList<>()).add(rowData);
+                fileData.add(dateKey, rowData);
+            } else {
+                diagnostics.skippedRow(fileName, NO_DATE);
             }
         }
 
-        return fileData;
+        return fileData.build();
     }
 
-    private static Map<String, List<List<String>>> parsePrihodRashodFile(Workbook workbook) {
-        Map<String, List<List<String>>> fileData = new HashMap<>();
+    private static ActTable parsePrihodRashodFile(Workbook workbook, String fileName, ParseDiagnostics diagnostics) {
+        ActTable.Builder fileData = new ActTable.Builder();
         Sheet sheet = workbook.getSheetAt(0);
 
         // --- НАХОДИМ ВСЕ НУЖНЫЕ И НЕНУЖНЫЕ КОЛОНКИ ---
@@ -443,7 +419,7 @@ public class ExcelComparator {
         }
 
         if (headerRow == -1) {
-            return fileData; // Не нашли ключевые заголовки
+            return fileData.build(); // Не нашли ключевые заголовки
         }
 
         Pattern datePattern = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{4}");
@@ -482,12 +458,14 @@ public class ExcelComparator {
                     }
 
                     if (!rowData.isEmpty()) {
-                        fileData.computeIfAbsent(dateKey, _ -> new ArrayList<>()).add(rowData);
+                        fileData.add(dateKey, rowData);
                     }
+                } else {
+                    diagnostics.skippedRow(fileName, NO_PERIOD_DATE);
                 }
             }
         }
-        return fileData;
+        return fileData.build();
     }
 
     // Вспомогательный метод для получения значения ячейки как строки
@@ -538,53 +516,60 @@ public class ExcelComparator {
         return true;
     }
 
+    // Список слов, которые всегда означают конец таблицы
+    private static final List<String> ABSOLUTE_STOP_WORDS = List.of(
+            "итого", "ітого",
+            "всего", "всього",
+            "оборот",
+            "разом"  // <-- "Разом" - это всегда конец.
+    );
+
+    // Список слов-триггеров, которые делают "сальдо" стоп-словом.
+    private static final List<String> SALDO_CONTEXT_WORDS = List.of(
+            "конец", "кінцеве", "кінець"
+    );
+
     // Метод для проверки, содержит ли строка итоговые значения
     private static boolean containsSummary(Row row) {
         if (row == null) {
             return false;
         }
 
-        // Список слов, которые всегда означают конец таблицы
-        List<String> absoluteStopWords = List.of(
-                "итого", "ітого",
-                "всего", "всього",
-                "оборот",
-                "разом"  // <-- "Разом" - это всегда конец.
-        );
-
-        // Список слов-триггеров, которые делают "сальдо" стоп-словом.
-        List<String> saldoContextWords = List.of(
-                "конец", "кінцеве", "кінець"
-        );
-
         for (Cell cell : row) {
             // Приводим к нижнему регистру для регистронезависимого сравнения
-            String value = getCellValueAsString(cell).trim().toLowerCase();
-            if (value.isEmpty()) {
-                continue;
+            if (isSummaryValue(getCellValueAsString(cell).trim().toLowerCase())) {
+                return true;
             }
+        }
 
-            // 1. Проверка на абсолютные стоп-слова ("разом", "итого" и т.д.)
-            for (String word : absoluteStopWords) {
-                if (value.contains(word)) {
-                    return true;
-                }
+        // Если ни одно из правил не сработало, то это обычная строка данных.
+        return false;
+    }
+
+    // Проверка одной ячейки (значение уже в нижнем регистре) на признак итоговой строки
+    static boolean isSummaryValue(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+
+        // 1. Проверка на абсолютные стоп-слова ("разом", "итого" и т.д.)
+        for (String word : ABSOLUTE_STOP_WORDS) {
+            if (value.contains(word)) {
+                return true;
             }
+        }
 
-            // 2. Умная проверка на "Сальдо". Сработает только для "сальдо кінцеве" и т.п.
-            // И НЕ сработает для "сальдо на початок".
-            if (value.contains("сальдо")) {
-                for (String context : saldoContextWords) {
-                    if (value.contains(context)) {
-                        // Нашли, например, "сальдо кінцеве". Это точно конец.
-                        return true;
-                    }
+        // 2. Умная проверка на "Сальдо". Сработает только для "сальдо кінцеве" и т.п.
+        // И НЕ сработает для "сальдо на початок".
+        if (value.contains("сальдо")) {
+            for (String context : SALDO_CONTEXT_WORDS) {
+                if (value.contains(context)) {
+                    // Нашли, например, "сальдо кінцеве". Это точно конец.
+                    return true;
                 }
-                // Если дошли сюда, значит, это было "сальдо на...", и мы НЕ останавливаемся.
             }
+            // Если дошли сюда, значит, это было "сальдо на...", и мы НЕ останавливаемся.
         }
-
-        // Если ни одно из правил не сработало, то это обычная строка данных.
         return false;
     }
 
@@ -603,7 +588,7 @@ public class ExcelComparator {
     }
 
     // Метод для преобразования "dd.MM.yy" в "dd.MM.yyyy"
-    private static String convertToFullYear(String date) {
+    static String convertToFullYear(String date) {
         String[] parts = date.split("\\.");
         if (parts.length == 3) {
             String year = parts[2];
@@ -625,9 +610,23 @@ public class ExcelComparator {
     }
 
     public static ComparisonResult compareDataInMegaMap(
-            Map<String, Map<String, List<List<String>>>> megaMap,
+            Map<String, ActTable> megaMap,
             boolean compareByAbsoluteValue,
             boolean comparePrihodRashod) {
+        return compareDataInMegaMap(megaMap, compareByAbsoluteValue, comparePrihodRashod, null, new ParseDiagnostics());
+    }
+
+    /**
+     * То же сравнение, но расхождения по каждой дате дополнительно сразу передаются listener,
+     * не дожидаясь окончания сравнения (listener может быть null).
+     * Суммы, которые не удалось разобрать, записываются в diagnostics.
+     */
+    public static ComparisonResult compareDataInMegaMap(
+            Map<String, ActTable> megaMap,
+            boolean compareByAbsoluteValue,
+            boolean comparePrihodRashod,
+            DateMismatchListener listener,
+            ParseDiagnostics diagnostics) {
 
         List<String> fileNames = new ArrayList<>(megaMap.keySet());
         List<String> differencesSummary = new ArrayList<>();
@@ -635,33 +634,34 @@ public class ExcelComparator {
         if (comparePrihodRashod) { // Для сравнения приходно-расходных накладных
 
             //адаптируем его под новый формат вывода
-            for (Map.Entry<String, List<List<String>>> merged : megaMap.get("merged").entrySet()) {
-                String mergedKey = merged.getKey();
-                List<List<String>> mergedValue = merged.getValue();
+            ActTable merged = megaMap.get("merged");
+            for (ActTable.Group product : merged.groups()) {
+                String mergedKey = product.key();
 
                 differencesSummary.add(String.format("    <span style='color: orange;'>Товар: %s</span>", mergedKey));
 
-                // Создаем список для хранения всех значений value
-                List<Double> values = new ArrayList<>();
-
-                for (List<String> sum : mergedValue) {
-                    // Предполагая, что сумма находится в первом элементе списка sum
-                    // и может быть преобразована в double
-                    try {
-                        double value = Double.parseDouble(sum.getFirst().replace(',', '.'));
-                        values.add(value);
-                        differencesSummary.add(String.format("    <span style='color: blue;'>Сумма: %.2f</span>", value));
-                    } catch (NumberFormatException e) {
-                        System.err.println("Не удалось распарсить сумму для товара: " + mergedKey + ", значение: " + sum.getFirst());
+                // Минимальная и максимальная сумма по товару (в копейках)
+                int valuesCount = 0;
+                long maxValue = Long.MIN_VALUE;
+                long minValue = Long.MAX_VALUE;
+
+                for (int row : product.rows()) {
+                    // Сумма находится в первой ячейке строки
+                    long value = merged.amount(row, 0);
+                    if (value == ActTable.NOT_AMOUNT) {
+                        diagnostics.problem(null, null, -1, -1,
+                                "Не удалось распарсить сумму для товара: " + mergedKey + ", значение: " + merged.text(row, 0));
+                        continue;
                     }
+                    valuesCount++;
+                    maxValue = Math.max(maxValue, value);
+                    minValue = Math.min(minValue, value);
+                    differencesSummary.add(String.format("    <span style='color: blue;'>Сумма: %.2f</span>", value / 100.0));
                 }
 
-                if (values.size() > 1) {
-                    // Находим максимальное и минимальное значение
-                    double maxValue = Collections.max(values);
-                    double minValue = Collections.min(values);
-                    double diff = maxValue - minValue;
-                    differencesSummary.add(String.format("    <span style='color: red;'>Разница: %.2f</span>", diff));
+                if (valuesCount > 1) {
+                    long diff = maxValue - minValue;
+                    differencesSummary.add(String.format("    <span style='color: red;'>Разница: %.2f</span>", diff / 100.0));
                 }
             }
 
@@ -674,49 +674,72 @@ public class ExcelComparator {
                 throw new IllegalArgumentException("Для сравнения необходимо минимум два файла.");
             }
 
-            Map<String, List<List<String>>> file1Data = megaMap.get(fileNames.get(0));
-            Map<String, List<List<String>>> file2Data = megaMap.get(fileNames.get(1));
+            ActTable file1Data = megaMap.get(fileNames.get(0));
+            ActTable file2Data = megaMap.get(fileNames.get(1));
 
             Map<String, MismatchInfo> mismatches = new HashMap<>();
 
             // Проверка совпадения ключей
-            boolean keysMatchEnough = checkKeysMatchEnough(file1Data.keySet(), file2Data.keySet());
+            boolean keysMatchEnough = checkKeysMatchEnough(file1Data.keys(), file2Data.keys());
 
             if (!keysMatchEnough) {
                 //differencesSummary.add(String.format("    <span style='color: red;'>ВНИМАНИЕ: Наборы дат в файлах сильно различаются. Дальнейшее сравнение нецелесообразно.</span>"));
                 differencesSummary.add("    <span style='color: red;'>ВНИМАНИЕ: Наборы дат в файлах сильно различаются. Дальнейшее сравнение нецелесообразно.</span>");
-                differencesSummary.add(String.format("    <span style='color: blue;'>Файл 1 содержит: %d записей</span>", file1Data.size()));
-                differencesSummary.add(String.format("    <span style='color: blue;'>Файл 2 содержит: %d записей</span>", file2Data.size()));
+                differencesSummary.add(String.format("    <span style='color: blue;'>Файл 1 содержит: %d записей</span>", file1Data.groupCount()));
+                differencesSummary.add(String.format("    <span style='color: blue;'>Файл 2 содержит: %d записей</span>", file2Data.groupCount()));
 
-                Set<String> commonKeys = new HashSet<>(file1Data.keySet());
-                commonKeys.retainAll(file2Data.keySet());
+                Set<String> commonKeys = new HashSet<>(file1Data.keys());
+                commonKeys.retainAll(file2Data.keys());
                 differencesSummary.add(String.format("    <span style='color: orange;'>Количество совпадающих дат: %d</span>", commonKeys.size()));
 
                 // Возвращаем результат без детальных данных
                 return new ComparisonResult(differencesSummary, null);
             }
 
-            Set<String> allKeys = new HashSet<>();
-            allKeys.addAll(file1Data.keySet());
-            allKeys.addAll(file2Data.keySet());
-            List<String> sortedKeys = allKeys.stream().sorted().toList();
+            // Слияние двух упорядоченных по дате списков: за один проход получаем даты
+            // обоих файлов в хронологическом порядке, без общего множества ключей и поиска по нему
+            List<ActTable.Group> file1Dates = file1Data.chronologicalGroups();
+            List<ActTable.Group> file2Dates = file2Data.chronologicalGroups();
+            int i1 = 0;
+            int i2 = 0;
+
+            while (i1 < file1Dates.size() || i2 < file2Dates.size()) {
+                int order;
+                if (i1 == file1Dates.size()) {
+                    order = 1;
+                } else if (i2 == file2Dates.size()) {
+                    order = -1;
+                } else {
+                    order = ActTable.CHRONOLOGICAL.compare(file1Dates.get(i1), file2Dates.get(i2));
+                }
 
-            for (String key : sortedKeys) {
-                List<List<String>> file1Rows = file1Data.getOrDefault(key, new ArrayList<>());
-                List<List<String>> file2Rows = file2Data.getOrDefault(key, new ArrayList<>());
+                String key = order <= 0 ? file1Dates.get(i1).key() : file2Dates.get(i2).key();
+                int[] file1Rows = order <= 0 ? file1Dates.get(i1++).rows() : new int[0];
+                int[] file2Rows = order >= 0 ? file2Dates.get(i2++).rows() : new int[0];
 
-                Map<String, Integer> file1Counts = buildValueCounts(file1Rows);
-                Map<String, Integer> file2Counts = buildValueCounts(file2Rows);
+                AmountMultiset file1Counts = AmountMultiset.of(file1Data, file1Rows);
+                AmountMultiset file2Counts = AmountMultiset.of(file2Data, file2Rows);
 
-                if (!compareMultisets(file1Counts, file2Counts)) {
+                if (!file1Counts.sameAs(file2Counts)) {
                     differencesSummary.add("Различия найдены для даты: " + key);
 
-                    // Получаем и сводку, и детали
-                    // НОВЫЙ ВЫЗОВ - передаем оригинальные строки file1Rows и file2Rows
-                    DifferenceDetailsResult diffResult = generateDifferenceDetails(file1Counts, file2Counts, file1Rows, file2Rows, compareByAbsoluteValue);
+                    // Получаем и сводку, и детали (номера несовпавших строк)
+                    DifferenceDetailsResult diffResult = generateDifferenceDetails(file1Counts, file2Counts,
+                            file1Data, file1Rows, file2Data, file2Rows, compareByAbsoluteValue);
 
                     differencesSummary.addAll(diffResult.summaryStrings());
                     mismatches.put(key, diffResult.mismatchInfo());
+
+                    if (listener != null) {
+                        List<String> dateSummary = new ArrayList<>(diffResult.summaryStrings().size() + 1);
+                        dateSummary.add("Различия найдены для даты: " + key);
+                        dateSummary.addAll(diffResult.summaryStrings());
+                        listener.onDateMismatch(key, dateSummary, diffResult.mismatchInfo());
+                    }
+                }
+
+                if (listener != null) {
+                    listener.onProgress((double) (i1 + i2) / (file1Dates.size() + file2Dates.size()));
                 }
             }
 
@@ -728,42 +751,6 @@ public class ExcelComparator {
         }
     }
 
-    // Создает мультимножество из списка строк
-    private static Map<String, Integer> buildValueCounts(List<List<String>> rows) {
-        Map<String, Integer> counts = new LinkedHashMap<>();
-        for (List<String> row : rows) {
-            for (String value : row) {
-                // ВАЖНО: Добавляем в мапу для сравнения только НЕНУЛЕВЫЕ числовые значения
-                if (isNonZeroNumeric(value)) { // <-- ИСПОЛЬЗУЕМ НОВЫЙ МЕТОД
-                    counts.put(value, counts.getOrDefault(value, 0) + 1);
-                }
-            }
-        }
-        return counts;
-    }
-
-    // Сравнивает два мультимножества
-    private static boolean compareMultisets(Map<String, Integer> set1, Map<String, Integer> set2) {
-        for (Map.Entry<String, Integer> entry : set1.entrySet()) {
-            String value = entry.getKey();
-            int count1 = entry.getValue();
-            int count2 = set2.getOrDefault(value, 0);
-
-            if (count1 != count2) {
-                return false;
-            }
-        }
-
-        for (Map.Entry<String, Integer> entry : set2.entrySet()) {
-            String value = entry.getKey();
-            if (!set1.containsKey(value)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
     // Новый метод для проверки совпадения ключей
     private static boolean checkKeysMatchEnough(Set<String> keys1, Set<String> keys2) {
         // Находим общие ключи
@@ -780,230 +767,238 @@ public class ExcelComparator {
     }
 
     private static DifferenceDetailsResult generateDifferenceDetails(
-            Map<String, Integer> file1ValueCounts, Map<String, Integer> file2ValueCounts,
-            List<List<String>> originalFile1Rows, List<List<String>> originalFile2Rows,
+            AmountMultiset file1ValueCounts, AmountMultiset file2ValueCounts,
+            ActTable file1Data, int[] file1Rows, ActTable file2Data, int[] file2Rows,
             boolean compareByAbsoluteValue) {
 
         List<String> detailsSummary = new ArrayList<>();
-        List<List<String>> uniqueRowsFile1 = new ArrayList<>();
-        List<List<String>> uniqueRowsFile2 = new ArrayList<>();
-
-        // --- Логика поиска уникальных СТРОК (остается без изменений, она корректна) ---
-        // Копии мап для отслеживания обработанных значений
-        Map<String, Integer> tempFile1Counts = new HashMap<>(file1ValueCounts);
-        Map<String, Integer> tempFile2Counts = new HashMap<>(file2ValueCounts);
-
-        for (List<String> row : originalFile1Rows) {
-            for (String value : row) {
-                if (isNumeric(value) && tempFile1Counts.getOrDefault(value, 0) > tempFile2Counts.getOrDefault(value, 0)) {
-                    uniqueRowsFile1.add(row);
-                    tempFile1Counts.put(value, tempFile1Counts.get(value) - 1);
-                    tempFile2Counts.computeIfPresent(value, (_, v) -> Math.max(0, v - 1));
-                    break;
-                }
-            }
-        }
 
-        tempFile1Counts = new HashMap<>(file1ValueCounts);
-        tempFile2Counts = new HashMap<>(file2ValueCounts);
+        // --- Логика поиска уникальных СТРОК ---
+        int[] uniqueRowsFile1 = findUniqueRows(file1Data, file1Rows, file1ValueCounts, file2ValueCounts);
+        int[] uniqueRowsFile2 = findUniqueRows(file2Data, file2Rows, file2ValueCounts, file1ValueCounts);
 
-        for (List<String> row : originalFile2Rows) {
-            for (String value : row) {
-                if (isNumeric(value) && tempFile2Counts.getOrDefault(value, 0) > tempFile1Counts.getOrDefault(value, 0)) {
-                    uniqueRowsFile2.add(row);
-                    tempFile2Counts.put(value, tempFile2Counts.get(value) - 1);
-                    tempFile1Counts.computeIfPresent(value, (_, v) -> Math.max(0, v - 1));
-                    break;
-                }
+        // --- ФОРМИРОВАНИЕ СВОДКИ ---
+        Locale.setDefault(Locale.US);
+        // Суммы считаются в копейках, без накопления ошибок double
+        long file1Sum = 0;
+        long file2Sum = 0;
+
+        // Суммы, которых в файле 1 больше, чем в файле 2
+        for (int i = 0; i < file1ValueCounts.size(); i++) {
+            int surplus = file1ValueCounts.surplusAt(i, file2ValueCounts);
+            if (surplus > 0) {
+                long value = compareByAbsoluteValue ? Math.abs(file1ValueCounts.amountAt(i)) : file1ValueCounts.amountAt(i);
+                detailsSummary.add(String.format("    <span style='color: blue;'>В файле 1: %.2f (количество: %d)</span>", value / 100.0, surplus));
+                file1Sum += value * surplus;
             }
         }
 
-        // --- ИСПРАВЛЕННАЯ ЛОГИКА ФОРМИРОВАНИЯ СВОДКИ ---
-        Locale.setDefault(Locale.US);
-        AtomicReference<Double> file1Sum = new AtomicReference<>(0.0);
-        AtomicReference<Double> file2Sum = new AtomicReference<>(0.0);
-
-        // Функция parseValue нам все еще нужна, но теперь она будет вызываться БЕЗОПАСНО
-        Function<String, Double> parseValue = value -> {
-            try {
-                if (value == null || value.trim().isEmpty()) return 0.0;
-                return Double.parseDouble(value.trim().replace(" ", "").replace("\u00A0", "").replace(",", "."));
-            } catch (NumberFormatException e) {
-                // Эта ошибка теперь практически невозможна, но оставим для безопасности
-                System.err.println("Не удалось преобразовать значение: '" + value + "'");
-                return 0.0;
-            }
-        };
-
-        // Проходим по КЛЮЧАМ (которые гарантированно являются числами) из file1ValueCounts
-        file1ValueCounts.forEach((value, count1) -> {
-            int count2 = file2ValueCounts.getOrDefault(value, 0);
-            if (count1 > count2) {
-                double numericValue = parseValue.apply(value); // Безопасный вызов
-                if (compareByAbsoluteValue) numericValue = Math.abs(numericValue);
-                detailsSummary.add(String.format("    <span style='color: blue;'>В файле 1: %.2f (количество: %d)</span>", numericValue, (count1 - count2)));
-                file1Sum.set(file1Sum.get() + (numericValue * (count1 - count2)));
-            }
-        });
-
-        // Проходим по КЛЮЧАМ из file2ValueCounts
-        file2ValueCounts.forEach((value, count2) -> {
-            int count1 = file1ValueCounts.getOrDefault(value, 0);
-            if (count2 > count1) {
-                double numericValue = parseValue.apply(value); // Безопасный вызов
-                if (compareByAbsoluteValue) numericValue = Math.abs(numericValue);
-                detailsSummary.add(String.format("    <span style='color: green;'>В файле 2: %.2f (количество: %d)</span>", numericValue, (count2 - count1)));
-                file2Sum.set(file2Sum.get() + (numericValue * (count2 - count1)));
-            }
-        });
+        // Суммы, которых в файле 2 больше, чем в файле 1
+        for (int i = 0; i < file2ValueCounts.size(); i++) {
+            int surplus = file2ValueCounts.surplusAt(i, file1ValueCounts);
+            if (surplus > 0) {
+                long value = compareByAbsoluteValue ? Math.abs(file2ValueCounts.amountAt(i)) : file2ValueCounts.amountAt(i);
+                detailsSummary.add(String.format("    <span style='color: green;'>В файле 2: %.2f (количество: %d)</span>", value / 100.0, surplus));
+                file2Sum += value * surplus;
+            }
+        }
 
         // --- Конец формирования сводки (добавление итогов) ---
         detailsSummary.add("<span style='color: grey;'>  Итоговая сумма не совпавших значений:</span>");
-        detailsSummary.add("    В файле 1: " + String.format("<span style='color: blue;'>%.2f</span>", file1Sum.get()));
-        detailsSummary.add("    В файле 2: " + String.format("<span style='color: green;'>%.2f</span>", file2Sum.get()));
-        double difference = Math.abs(file1Sum.get() - file2Sum.get());
-        if (difference < 0.000001) {
+        detailsSummary.add("    В файле 1: " + String.format("<span style='color: blue;'>%.2f</span>", file1Sum / 100.0));
+        detailsSummary.add("    В файле 2: " + String.format("<span style='color: green;'>%.2f</span>", file2Sum / 100.0));
+        long difference = Math.abs(file1Sum - file2Sum);
+        if (difference == 0) {
             detailsSummary.add(String.format("    <span style='color: black;'>Разница: %.2f</span>", 0.00));
         } else {
-            detailsSummary.add(String.format("    <span style='color: red;'>Разница: %.2f</span>", difference));
+            detailsSummary.add(String.format("    <span style='color: red;'>Разница: %.2f</span>", difference / 100.0));
         }
 
         MismatchInfo mismatchInfo = new MismatchInfo(uniqueRowsFile1, uniqueRowsFile2);
         return new DifferenceDetailsResult(detailsSummary, mismatchInfo);
     }
 
+    // Строки, в которых есть сумма, встречающаяся в этом файле чаще, чем в другом.
+    // Каждая найденная строка "расходует" одно вхождение суммы: пока вхождения не кончились,
+    // сумма с излишком помечает строку (так же, как при поштучном вычитании из копий счетчиков)
+    private static int[] findUniqueRows(ActTable table, int[] rows,
+                                        AmountMultiset ownCounts, AmountMultiset otherCounts) {
+        int[] remaining = ownCounts.countsCopy();
+        int[] uniqueRows = new int[rows.length];
+        int uniqueCount = 0;
+
+        for (int row : rows) {
+            for (int cell = 0; cell < table.cellCount(row); cell++) {
+                long value = table.amount(row, cell);
+                if (value == ActTable.NOT_AMOUNT) {
+                    continue;
+                }
+                int index = ownCounts.indexOf(value);
+                if (index >= 0 && remaining[index] > 0 && ownCounts.surplusAt(index, otherCounts) > 0) {
+                    uniqueRows[uniqueCount++] = row;
+                    remaining[index]--;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(uniqueRows, uniqueCount);
+    }
+
     //Приход-расход для сравнения товаров
-    public static Map<String, Map<String, List<List<String>>>> parseFilesPrihodRashod(File[] files) {
+    public static Map<String, ActTable> parseFilesPrihodRashod(File[] files) {
+        StageTimings timings = new StageTimings();
+        List<LoadedWorkbook> workbooks = new ArrayList<>();
+        try {
+            workbooks.addAll(LoadedWorkbook.loadAll(files, timings, ParserEngine.DOM));
+            return parseWorkbooksPrihodRashod(workbooks, new ParseDiagnostics());
+        } finally {
+            workbooks.forEach(LoadedWorkbook::close);
+        }
+    }
+
+    private static Map<String, ActTable> parseWorkbooksPrihodRashod(List<LoadedWorkbook> workbooks, ParseDiagnostics diagnostics) {
 
         Map<String, Map<String, List<List<String>>>> megaMap = new LinkedHashMap<>();
 
-        for (File file : files) {
+        // Накладные разбираются параллельно, в megaMap попадают в порядке файлов
+        // Наименования нормализуются один раз за сравнение: и при разборе, и при сопоставлении
+        ProductNameNormalizer normalizer = new ProductNameNormalizer();
+        List<Map<String, List<List<String>>>> parsedFiles = ParallelTasks.map(workbooks,
+                loaded -> parseProductSheet(loaded, normalizer, diagnostics));
+        for (int i = 0; i < workbooks.size(); i++) {
+            if (parsedFiles.get(i) != null) {
+                megaMap.put(workbooks.get(i).getName(), parsedFiles.get(i));
+            }
+        }
 
-            try (FileInputStream fis = new FileInputStream(file);
-                 Workbook workbook = file.getName().endsWith(".xlsx") ? new XSSFWorkbook(fis) : new HSSFWorkbook(fis)) {
+        // Сравниваем данные между каждой парой файлов
+        String key = "merged"; // здесь укажите нужный вам ключ
 
-                Sheet sheet = workbook.getSheetAt(0);
+        // Добавляем mergedData в megaMap
+        Map<String, ActTable> megaMapka = new LinkedHashMap<>();
+        Map<String, List<List<String>>> compareMegaMap = compareMegaMapData(megaMap, 2, normalizer, diagnostics);
 
-                // Найдем индексы нужных колонок
-                int productNameIndex = -1;
-                int priceIndex = -1;
-                int sumIndex = -1;
-                int headerRow = -1;
+        megaMapka.put(key, ActTable.of(compareMegaMap));
 
-                // Поиск колонок по заголовкам
-                for (Row row : sheet) {
-                    for (Cell cell : row) {
-                        String value = getCellValueAsString1(cell).trim();
+        return megaMapka;
+    }
 
-                        // Ищем заголовки колонок
-                        if (value.equalsIgnoreCase("Товар")) {
-                            productNameIndex = cell.getColumnIndex();
+    // Товары, цены и суммы из накладной. null, если книга не открыта или заголовки не найдены
+    private static Map<String, List<List<String>>> parseProductSheet(LoadedWorkbook loaded, ProductNameNormalizer normalizer,
+                                                                     ParseDiagnostics diagnostics) {
+        Workbook workbook = loaded.getWorkbook();
+        if (workbook == null) {
+            return null; // Ошибка открытия уже записана при обычном парсинге
+        }
 
-                        }
-                        if (value.equalsIgnoreCase("Ціна без ПДВ")) {
-                            priceIndex = cell.getColumnIndex();
+        Sheet sheet = workbook.getSheetAt(0);
 
-                        }
-                        if (value.equalsIgnoreCase("Сума без ПДВ")) {
-                            sumIndex = cell.getColumnIndex();
+        // Найдем индексы нужных колонок
+        int productNameIndex = -1;
+        int priceIndex = -1;
+        int sumIndex = -1;
+        int headerRow = -1;
 
-                        }
-                    }
+        // Поиск колонок по заголовкам
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                String value = getCellValueAsString1(cell).trim();
 
-                    // Если нашли все колонки
-                    if (productNameIndex != -1 && priceIndex != -1 && sumIndex != -1) {
-                        headerRow = row.getRowNum();
+                // Ищем заголовки колонок
+                if (value.equalsIgnoreCase("Товар")) {
+                    productNameIndex = cell.getColumnIndex();
 
-                        break;
-                    }
                 }
+                if (value.equalsIgnoreCase("Ціна без ПДВ")) {
+                    priceIndex = cell.getColumnIndex();
 
-                if (headerRow == -1) {
+                }
+                if (value.equalsIgnoreCase("Сума без ПДВ")) {
+                    sumIndex = cell.getColumnIndex();
 
-                    continue;
                 }
+            }
 
-                Map<String, List<List<String>>> fileData = new HashMap<>();
-                // Создаем map для хранения нормализованных ключей
-                Map<String, String> normalizedKeys = new HashMap<>();
+            // Если нашли все колонки
+            if (productNameIndex != -1 && priceIndex != -1 && sumIndex != -1) {
+                headerRow = row.getRowNum();
 
-                // Начинаем читать со следующей строки после заголовков
-                for (int i = headerRow + 1; i <= sheet.getLastRowNum(); i++) {
-                    Row row = sheet.getRow(i);
+                break;
+            }
+        }
 
-                    if (row == null) {
+        if (headerRow == -1) {
+            diagnostics.problem(loaded.getName(), sheet.getSheetName(), -1, -1,
+                    "Не найдены колонки \"Товар\", \"Ціна без ПДВ\", \"Сума без ПДВ\"");
+            return null;
+        }
 
-                        break;
-                    }
+        Map<String, List<List<String>>> fileData = new HashMap<>();
+        // Создаем map для хранения нормализованных ключей
+        Map<String, String> normalizedKeys = new HashMap<>();
 
-                    // Получаем значения из нужных колонок
-                    Cell productCell = row.getCell(productNameIndex);
-                    Cell priceCell = row.getCell(priceIndex);
-                    Cell sumCell = row.getCell(sumIndex);
+        // Начинаем читать со следующей строки после заголовков
+        for (int i = headerRow + 1; i <= sheet.getLastRowNum(); i++) {
+            Row row = sheet.getRow(i);
 
-                    if (productCell == null || priceCell == null || sumCell == null) {
+            if (row == null) {
 
-                        break;
-                    }
+                break;
+            }
 
-                    String productName = getCellValueAsString1(productCell).trim();
-                    String priceStr = getCellValueAsString1(priceCell).trim();
-                    String sumStr = getCellValueAsString1(sumCell).trim();
+            // Получаем значения из нужных колонок
+            Cell productCell = row.getCell(productNameIndex);
+            Cell priceCell = row.getCell(priceIndex);
+            Cell sumCell = row.getCell(sumIndex);
 
-                    // Пропускаем пустые строки и строки с итогами
-                    if (productName.isEmpty() || priceStr.isEmpty() || sumStr.isEmpty() ||
-                            productName.toLowerCase().contains("итого") ||
-                            productName.toLowerCase().contains("всего")) {
-                        continue;
-                    }
+            if (productCell == null || priceCell == null || sumCell == null) {
 
-                    try {
-                        double sum = Double.parseDouble(sumStr.replace(',', '.'));
+                break;
+            }
 
-                        // Округляем значения
-                        double roundedSum = Math.round(sum * 100) / 100.0;
+            String productName = getCellValueAsString1(productCell).trim();
+            String priceStr = getCellValueAsString1(priceCell).trim();
+            String sumStr = getCellValueAsString1(sumCell).trim();
 
-                        // Добавляем данные в fileData
-                        String normalizedKey = normalize(productName); // используем метод normalize из предыдущего кода
-                        if (!normalizedKeys.containsKey(normalizedKey)) {
-                            normalizedKeys.put(normalizedKey, productName);
-                        }
-
-                        // Создаем новый список с данными
-                        List<String> dataRow = List.of(
-                                String.valueOf(roundedSum)  // Добавляем сумму как строку
-                        );
+            // Пропускаем пустые строки и строки с итогами
+            if (productName.isEmpty() || priceStr.isEmpty() || sumStr.isEmpty() ||
+                    productName.toLowerCase().contains("итого") ||
+                    productName.toLowerCase().contains("всего")) {
+                continue;
+            }
 
-                        // Добавляем данные в fileData
-                        fileData.computeIfAbsent(normalizedKey, _ -> new ArrayList<>()).add(dataRow);
+            try {
+                double sum = Double.parseDouble(sumStr.replace(',', '.'));
 
-                    } catch (NumberFormatException _) {
+                // Округляем значения
+                double roundedSum = Math.round(sum * 100) / 100.0;
 
-                    }
+                // Добавляем данные в fileData
+                String normalizedKey = normalizer.normalize(productName);
+                if (!normalizedKeys.containsKey(normalizedKey)) {
+                    normalizedKeys.put(normalizedKey, productName);
                 }
 
-                megaMap.put(file.getName(), fileData);
+                // Создаем новый список с данными
+                List<String> dataRow = List.of(
+                        String.valueOf(roundedSum)  // Добавляем сумму как строку
+                );
 
-            } catch (IOException _) {
+                // Добавляем данные в fileData
+                fileData.computeIfAbsent(normalizedKey, _ -> new ArrayList<>()).add(dataRow);
 
+            } catch (NumberFormatException _) {
+                diagnostics.problem(loaded.getName(), sheet.getSheetName(), i, sumIndex, "Сумма не является числом: " + sumStr);
+                diagnostics.skippedRow(loaded.getName(), "сумма не число");
             }
         }
 
-        // Сравниваем данные между каждой парой файлов
-        String key = "merged"; // здесь укажите нужный вам ключ
-
-        // Добавляем mergedData в megaMap
-        Map<String, Map<String, List<List<String>>>> megaMapka = new LinkedHashMap<>();
-        Map<String, List<List<String>>> compareMegaMap = compareMegaMapData(megaMap, 2);
-
-        megaMapka.put(key, compareMegaMap);
-
-        return megaMapka;
+        return fileData;
     }
 
     // Метод для обработки файлов Приход/Расход БЕЗ остатков (структура как Дебет/Кредит)
-    private static Map<String, List<List<String>>> parsePrihodRashodAsDebitCredit(Workbook workbook) {
-        Map<String, List<List<String>>> fileData = new LinkedHashMap<>();
+    private static ActTable parsePrihodRashodAsDebitCredit(Workbook workbook, String fileName, ParseDiagnostics diagnostics) {
+        ActTable.Builder fileData = new ActTable.Builder();
         Sheet sheet = workbook.getSheetAt(0);
         int startRowIndex = -1;
 
@@ -1024,7 +1019,7 @@ public class ExcelComparator {
         }
 
         if (startRowIndex == -1) {
-            return fileData;
+            return fileData.build();
         }
 
         Pattern datePattern = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2,4}");
@@ -1064,21 +1059,34 @@ public class ExcelComparator {
 
             // Добавляем строку, только если в ней была найдена дата
             if (dateKey != null) {
-                fileData.computeIfAbsent(dateKey, k -> new ArrayList<>()).add(rowData);
+                fileData.add(dateKey, rowData);
+            } else {
+                diagnostics.skippedRow(fileName, NO_DATE);
             }
         }
-        return fileData;
+        return fileData.build();
     }
 
     public static Map<String, List<List<String>>> compareMegaMapData(
             Map<String, Map<String, List<List<String>>>> megaMap,
             int maxDistance) {
+        return compareMegaMapData(megaMap, maxDistance, new ProductNameNormalizer(), new ParseDiagnostics());
+    }
+
+    // Лишние накладные записываются в diagnostics и не сравниваются, без второй накладной сравнивать нечего
+    public static Map<String, List<List<String>>> compareMegaMapData(
+            Map<String, Map<String, List<List<String>>>> megaMap,
+            int maxDistance, ProductNameNormalizer normalizer, ParseDiagnostics diagnostics) {
 
         // Получаем существующие ключи из megaMap
         Set<String> keys = megaMap.keySet();
-        if (keys.size() != 2) {
-            System.out.println("В megaMap должно быть ровно 2 ключа");
-
+        if (keys.size() < 2) {
+            throw new IllegalArgumentException("Для сравнения по товарам нужно две накладные, прочитано: " + keys.size()
+                    + (keys.isEmpty() ? "" : " (" + String.join(", ", keys) + ")"));
+        }
+        if (keys.size() > 2) {
+            diagnostics.problem(null, null, -1, -1, "Для сравнения по товарам нужно ровно две накладные, прочитано: "
+                    + keys.size() + " (" + String.join(", ", keys) + "), сравниваются первые две");
         }
 
         // Получаем два ключа из Set
@@ -1093,26 +1101,26 @@ public class ExcelComparator {
         Map<String, List<List<String>>> mergedData = new HashMap<>();
         Set<String> processedKeys = new HashSet<>(); // Для отслеживания обработанных ключей
 
-        // Обрабатываем похожие ключи
-        for (Map.Entry<String, List<List<String>>> entry1 : fileData1.entrySet()) {
-            String innerKey1 = entry1.getKey();
-            List<List<String>> innerValue1 = entry1.getValue();
-
-            String bestMatch = null;
-            int bestScore = Integer.MAX_VALUE;
+        // Ключи второго файла нормализуем один раз и индексируем по биграммам,
+        // чтобы для каждого товара первого файла считать расстояние только до кандидатов
+        List<String> keys1 = new ArrayList<>(fileData1.keySet());
+        List<String> keys2 = new ArrayList<>(fileData2.keySet());
+        List<String> normalizedKeys2 = new ArrayList<>(keys2.size());
+        for (String innerKey2 : keys2) {
+            normalizedKeys2.add(normalizer.normalize(innerKey2));
+        }
+        ProductNameIndex index2 = ProductNameIndex.build(normalizedKeys2);
 
-            for (Map.Entry<String, List<List<String>>> entry2 : fileData2.entrySet()) {
-                String innerKey2 = entry2.getKey();
+        // Каждому товару первого файла - не больше одного товара второго и наоборот
+        int[] matches = assignProducts(keys1, index2, maxDistance, normalizer);
 
-                int distance = levenshteinDistance(normalize(innerKey1), normalize(innerKey2));
+        for (int i = 0; i < keys1.size(); i++) {
+            String innerKey1 = keys1.get(i);
+            List<List<String>> innerValue1 = fileData1.get(innerKey1);
 
-                if (distance < bestScore) {
-                    bestScore = distance;
-                    bestMatch = innerKey2;
-                }
-            }
+            if (matches[i] >= 0) {
+                String bestMatch = keys2.get(matches[i]);
 
-            if (bestScore <= maxDistance) {
                 // Создаем Set для хранения уникальных значений
                 Set<List<String>> uniqueValues = new HashSet<>();
 
@@ -1138,7 +1146,7 @@ public class ExcelComparator {
             }
         }
 
-// Добавляем оставшиеся необработанные данные из второго файла
+        // Добавляем оставшиеся необработанные данные из второго файла
         for (Map.Entry<String, List<List<String>>> entry2 : fileData2.entrySet()) {
             String key22 = entry2.getKey();
             if (!processedKeys.contains(key22)) {
@@ -1159,43 +1167,125 @@ public class ExcelComparator {
         return finalMap;
     }
 
-    public static String normalize(String str) {
-        if (str == null) return "";
+    /**
+     * Сопоставление товаров один к одному. Строится разреженный граф пар с расстоянием
+     * не больше maxDistance (через индекс кандидатов), пары перебираются от самых близких,
+     * и пара принимается, только если оба товара еще свободны. Так товар второго файла
+     * не достается нескольким товарам первого, а товар, у которого ближайшего соседа уже забрали,
+     * получает следующего подходящего.
+     *
+     * @return для каждого ключа первого файла номер ключа второго файла в index2 или -1
+     */
+    private static int[] assignProducts(List<String> keys1, ProductNameIndex index2, int maxDistance,
+                                        ProductNameNormalizer normalizer) {
+        // Ребро: {расстояние, номер ключа первого файла, номер ключа второго файла}
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < keys1.size(); i++) {
+            String normalizedKey1 = normalizer.normalize(keys1.get(i));
+            for (int candidate : index2.candidates(normalizedKey1, maxDistance)) {
+                int distance = levenshteinDistance(normalizedKey1, index2.name(candidate), maxDistance);
+                if (distance <= maxDistance) {
+                    edges.add(new int[]{distance, i, candidate});
+                }
+            }
+        }
+        // При равных расстояниях - в порядке ключей, как при прежнем переборе
+        edges.sort(Comparator.<int[]>comparingInt(edge -> edge[0])
+                .thenComparingInt(edge -> edge[1])
+                .thenComparingInt(edge -> edge[2]));
+
+        int[] matches = new int[keys1.size()];
+        Arrays.fill(matches, -1);
+        boolean[] taken = new boolean[index2.size()];
+        for (int[] edge : edges) {
+            if (matches[edge[1]] < 0 && !taken[edge[2]]) {
+                matches[edge[1]] = edge[2];
+                taken[edge[2]] = true;
+            }
+        }
+        return matches;
+    }
 
-        // Базовая нормализация
-        str = str.toLowerCase();
-        str = str.replace('_', ' ');
+    public static String normalize(String str) {
+        return ProductNameNormalizer.normalizeUncached(str);
+    }
 
-        // Удаление запятых и точек
-        str = str.replaceAll("[,.]", "");
+    // Две строки матрицы расстояний на поток - переиспользуются между вызовами
+    private static final ThreadLocal<int[][]> LEVENSHTEIN_ROWS = ThreadLocal.withInitial(() -> new int[][]{new int[64], new int[64]});
 
-        // Удаление кавычек
-        str = str.replaceAll("\"", "");
+    public static int levenshteinDistance(String s1, String s2) {
+        return levenshteinDistance(s1, s2, Math.max(s1.length(), s2.length()));
+    }
 
-        // Нормализация пробелов
-        str = str.replaceAll("\\s+", " ").trim();
+    /**
+     * Расстояние Левенштейна, если оно не больше maxDistance, иначе maxDistance + 1.
+     * Считаются только клетки полосы шириной maxDistance вокруг диагонали (остальные заведомо
+     * больше порога), по двум строкам вместо полной матрицы; расчет прекращается,
+     * как только вся строка полосы превысила порог.
+     */
+    public static int levenshteinDistance(String s1, String s2, int maxDistance) {
+        // Внешний цикл - по более короткой строке, тогда полоса не длиннее второй строки
+        if (s1.length() > s2.length()) {
+            String tmp = s1;
+            s1 = s2;
+            s2 = tmp;
+        }
+        int n = s1.length();
+        int m = s2.length();
+        if (m - n > maxDistance) {
+            return maxDistance + 1;
+        }
+        if (n == 0) {
+            return m;
+        }
 
-        // Специфические замены слов
-        str = str.replace("ніжність", "ніжн");
-        str = str.replace("інтенс зволоження", "інтенсзволож");
-        str = str.replace("інтенс. зволоження", "інтенсзволож");
+        // Клетки за пределами полосы держим равными порогу + 1, чтобы они не влияли на минимум
+        int outside = maxDistance + 1;
+        int[][] rows = LEVENSHTEIN_ROWS.get();
+        if (rows[0].length < m + 1) {
+            rows[0] = new int[m + 1];
+            rows[1] = new int[m + 1];
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
 
-        // Унификация единиц измерения (считаем мл и г эквивалентными для 500)
-        str = str.replaceAll("500\\s*г\\s+з\\s+розпилювачем", "500мл з розпилювачем");
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= maxDistance ? j : outside;
+        }
 
-        // Нормализация единиц измерения
-        str = str.replaceAll("(\\d+)\\s*мл", "$1мл");
-        str = str.replaceAll("(\\d+)\\s*г", "$1г");
-        str = str.replaceAll("(\\d+)\\s*л", "$1л");
-        str = str.replaceAll("(\\d+)\\s*шт", "$1шт");
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            current[0] = i <= maxDistance ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
 
-        // Нормализация брендов
-        str = str.replaceAll("nivea\\s+creme", "niveacreme");
+            char c1 = s1.charAt(i - 1);
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = (c1 == s2.charAt(j - 1)) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                value = Math.min(value, outside);
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (to < m) {
+                current[to + 1] = outside;
+            }
+            if (rowMin > maxDistance) {
+                return outside;
+            }
 
-        return str;
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return Math.min(previous[m], outside);
     }
 
-    public static int levenshteinDistance(String s1, String s2) {
+    // Прежний расчет по полной матрице - эталон для проверки полосного варианта в тестах
+    static int levenshteinDistanceFullMatrix(String s1, String s2) {
         int[][] dp = new int[s1.length() + 1][s2.length() + 1];
 
         for (int i = 0; i <= s1.length(); i++) {
@@ -1245,7 +1335,7 @@ public class ExcelComparator {
      * @param str Строка для проверки.
      * @return true, если строка представляет ненулевое число, иначе false.
      */
-    private static boolean isNonZeroNumeric(String str) {
+    static boolean isNonZeroNumeric(String str) {
         if (str == null || str.trim().isEmpty()) {
             return false;
         }
@@ -1263,7 +1353,7 @@ public class ExcelComparator {
      * Проверяет, является ли строка простым целым числом (как порядковый номер),
      * корректно обрабатывая строки типа "1.0".
      */
-    private static boolean isSequentialNumber(String str) {
+    static boolean isSequentialNumber(String str) {
         if (str == null || str.trim().isEmpty()) {
             return false;
         }
@@ -1287,7 +1377,7 @@ public class ExcelComparator {
      * @param rawName Исходное имя из ячейки.
      * @return Чистое, короткое имя.
      */
-    private static String finalizeCounterpartyName(String rawName) {
+    static String finalizeCounterpartyName(String rawName) {
         if (rawName == null || rawName.isEmpty()) {
             return null;
         }
@@ -1317,12 +1407,48 @@ public class ExcelComparator {
      * @return Наименование контрагента или "КОНТРАГЕНТ НЕ НАЙДЕН".
      */
     public static String findCounterpartyName(File[] files) {
-        for (File file : files) {
-            if (file == null) continue;
-            try (InputStream is = new FileInputStream(file);
-                 Workbook workbook = WorkbookFactory.create(is)) {
+        StageTimings timings = new StageTimings();
+        List<LoadedWorkbook> workbooks = new ArrayList<>();
+        try {
+            for (File file : files) {
+                if (file != null) {
+                    workbooks.add(LoadedWorkbook.load(file, timings));
+                }
+            }
+            return findCounterpartyName(workbooks, new ParseDiagnostics());
+        } finally {
+            workbooks.forEach(LoadedWorkbook::close);
+        }
+    }
+
+    /**
+     * То же самое для уже загруженных книг, без повторного открытия файлов.
+     * Файлы, которые не удалось прочитать, записываются в diagnostics и пропускаются.
+     */
+    public static String findCounterpartyName(List<LoadedWorkbook> workbooks, ParseDiagnostics diagnostics) {
+        for (LoadedWorkbook loaded : workbooks) {
+            ParseCache.Entry cached = loaded.cachedAct();
+            if (cached != null) {
+                if (cached.counterpartyName() != null && !cached.counterpartyName().isEmpty()) {
+                    return cached.counterpartyName();
+                }
+                continue;
+            }
 
-                Sheet sheet = workbook.getSheetAt(0);
+            ActRowParser streamedAct = loaded.streamedAct();
+            if (streamedAct != null) {
+                String foundName = streamedAct.getCounterpartyName();
+                if (foundName != null && !foundName.isEmpty()) {
+                    return foundName;
+                }
+                continue;
+            }
+
+            if (loaded.getWorkbook() == null) {
+                continue; // Ошибка открытия будет записана при парсинге
+            }
+            try {
+                Sheet sheet = loaded.getWorkbook().getSheetAt(0);
                 String foundName = findNameInSheet(sheet);
                 if (foundName != null && !foundName.isEmpty()) {
                     return foundName; // Если имя найдено, сразу возвращаем его
@@ -1330,7 +1456,7 @@ public class ExcelComparator {
 
             } catch (Exception e) {
                 // Игнорируем ошибки при чтении файла для поиска имени, чтобы не прерывать основной процесс
-                System.err.println("Не удалось прочитать файл для поиска контрагента: " + file.getName());
+                diagnostics.fileError(loaded.getName(), "Не удалось прочитать файл для поиска контрагента", e);
             }
         }
         return "КОНТРАГЕНТ НЕ НАЙДЕН"; // Возвращаем, если ничего не нашли
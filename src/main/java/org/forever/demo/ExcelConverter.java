@@ -3,47 +3,23 @@ package org.forever.demo;
 import com.jacob.activeX.ActiveXComponent;
 import com.jacob.com.Dispatch;
 import com.jacob.com.Variant;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.poifs.filesystem.FileMagic;
-
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 import java.io.*;
 
 public class ExcelConverter {
     public record ExcelFileInfo(String version, boolean isConvertible, String details) {
     }
 
-    private static final Logger logger = Logger.getLogger(ExcelConverter.class.getName());
+    private static DocumentConverter converter;
 
+    // Формат определяется по сигнатуре и каталогу OLE2, книга при этом не открывается
     public static ExcelFileInfo checkExcelVersion(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis)) {
-
-            FileMagic fileMagic = FileMagic.valueOf(bis);
-
-            if (fileMagic == FileMagic.OOXML) {
-                return new ExcelFileInfo("Excel XLSX", false, "Современный формат XLSX");
-            }
-
-            if (fileMagic == FileMagic.OLE2) {
-                try (FileInputStream testFis = new FileInputStream(file)) {
-                    new HSSFWorkbook(testFis).close();
-                    return new ExcelFileInfo("Excel 97-2003 (BIFF8)", false, "Формат Excel 97-2003");
-                } catch (Exception e) {
-                    if (e.getMessage() != null && e.getMessage().contains("BIFF5")) {
-                        return new ExcelFileInfo("Excel 5.0/7.0 (BIFF5)", true, "Старый формат Excel, будет преобразован");
-                    }
-                    logger.log(Level.SEVERE, "Ошибка при обработке файла Excel: " + file.getName(), e);
-                }
-            }
-
-            return new ExcelFileInfo("Неизвестный формат", false, "Формат файла не определен");
+        ExcelFormat format = ExcelFormat.detect(file);
+        if (format == ExcelFormat.BIFF5) {
+            return new ExcelFileInfo(format.getVersion(), true, "Старый формат Excel, будет преобразован");
         }
+        return new ExcelFileInfo(format.getVersion(), false, format.getDetails());
     }
 
     // First part - checking and converting files
@@ -59,56 +35,54 @@ public class ExcelConverter {
         return null; // или можно выбросить исключение, если ни один файл не подходит
     }
 
-    // Метод конвертации, возвращающий сконвертированный файл
+    // Метод конвертации, возвращающий сконвертированный файл (из кэша конвертаций, если файл уже конвертировался)
     public static File convertBiff5ToXlsx(File inputFile) throws Exception {
-        File outputFile = new File(inputFile.getParent(),
-                FilenameUtils.getBaseName(inputFile.getName()) + ".xlsx");
+        return ConversionCache.convert(inputFile);
+    }
 
-        boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
+    // Конвертация в указанную папку; рядом с исходным файлом ничего не создается
+    static File convertBiff5ToXlsx(File inputFile, File outputDir) throws Exception {
+        return converter().convertToXlsx(inputFile, outputDir);
+    }
+
+    // Конвертер по умолчанию: Excel через COM на Windows, пул LibreOffice на остальных системах
+    private static synchronized DocumentConverter converter() throws IOException {
+        if (converter == null) {
+            boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
+            converter = isWindows ? ExcelConverter::convertWithExcel : OfficeConverterPool.shared();
+        }
+        return converter;
+    }
+
+    // Замена конвертера (например, на копирование готовых XLSX, когда офис не установлен)
+    public static synchronized void setConverter(DocumentConverter documentConverter) {
+        converter = documentConverter;
+    }
 
-        if (isWindows) {
-            ActiveXComponent excel = null;
-            try {
-                excel = new ActiveXComponent("Excel.Application");
-                excel.setProperty("Visible", false);
+    private static File convertWithExcel(File inputFile, File outputDir) {
+        File outputFile = new File(outputDir,
+                FilenameUtils.getBaseName(inputFile.getName()) + ".xlsx");
 
-                Dispatch workbooks = excel.getProperty("Workbooks").toDispatch();
-                Dispatch workbook = Dispatch.call(workbooks, "Open",
-                        inputFile.getAbsolutePath()).toDispatch();
+        ActiveXComponent excel = null;
+        try {
+            excel = new ActiveXComponent("Excel.Application");
+            excel.setProperty("Visible", false);
 
-                Dispatch.call(workbook, "SaveAs",
-                        outputFile.getAbsolutePath(),
-                        new Variant(51)); // xlOpenXMLWorkbook
+            Dispatch workbooks = excel.getProperty("Workbooks").toDispatch();
+            Dispatch workbook = Dispatch.call(workbooks, "Open",
+                    inputFile.getAbsolutePath()).toDispatch();
 
-                Dispatch.call(workbook, "Close", new Variant(false));
+            Dispatch.call(workbook, "SaveAs",
+                    outputFile.getAbsolutePath(),
+                    new Variant(51)); // xlOpenXMLWorkbook
 
-            } finally {
-                if (excel != null) {
-                    excel.invoke("Quit");
-                }
-            }
-        } else {
-            // Linux конвертация через LibreOffice
-            ProcessBuilder pb = new ProcessBuilder(
-                    "/usr/lib/libreoffice/program/soffice",
-                    "--headless",
-                    "--convert-to", "xlsx",
-                    "--outdir", inputFile.getParent(),
-                    inputFile.getAbsolutePath()
-            );
-
-            Process process = pb.start();
-            if (process.waitFor() != 0) {
-                throw new Exception("LibreOffice conversion failed");
-            }
+            Dispatch.call(workbook, "Close", new Variant(false));
 
-            File tempOutput = new File(inputFile.getParent(),
-                    FilenameUtils.getBaseName(inputFile.getName()) + ".xlsx");
-            if (!tempOutput.equals(outputFile)) {
-                FileUtils.moveFile(tempOutput, outputFile);
+        } finally {
+            if (excel != null) {
+                excel.invoke("Quit");
             }
         }
-
         return outputFile;
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package org.forever.demo;
+
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+import java.io.*;
+
+/**
+ * Формат файла Excel, определенный заранее по сигнатуре и содержимому, без попыток открыть книгу.
+ * XLSX узнается по сигнатуре ZIP (FileMagic.OOXML). У файлов OLE2 смотрится каталог:
+ * Excel 97-2003 хранит книгу в потоке "Workbook", Excel 5.0/7.0 - в потоке "Book";
+ * окончательно версию определяет первая запись потока (BOF), так как некоторые программы
+ * пишут BIFF5 в поток "Workbook".
+ */
+public enum ExcelFormat {
+    XLSX("Excel XLSX", "Современный формат XLSX"),
+    XLS("Excel 97-2003 (BIFF8)", "Формат Excel 97-2003"),
+    BIFF5("Excel 5.0/7.0 (BIFF5)", "Старый формат Excel, читается напрямую"),
+    UNKNOWN("Неизвестный формат", "Формат файла не определен");
+
+    private static final int BOF_SID = 0x0809;
+    private static final int BIFF8_VERSION = 0x0600;
+
+    private final String version;
+    private final String details;
+
+    ExcelFormat(String version, String details) {
+        this.version = version;
+        this.details = details;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public static ExcelFormat detect(File file) throws IOException {
+        FileMagic fileMagic;
+        try (InputStream is = FileMagic.prepareToCheckMagic(new FileInputStream(file))) {
+            fileMagic = FileMagic.valueOf(is);
+        }
+        return switch (fileMagic) {
+            case OOXML -> XLSX;
+            case OLE2 -> detectOle2(file);
+            default -> UNKNOWN;
+        };
+    }
+
+    // Читается только каталог OLE2 и первые байты потока книги
+    private static ExcelFormat detectOle2(File file) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+            DirectoryNode root = fs.getRoot();
+            for (String entry : new String[]{"Workbook", "WORKBOOK", "BOOK"}) {
+                if (root.hasEntry(entry)) {
+                    return isBiff8(root, entry) ? XLS : BIFF5;
+                }
+            }
+            if (root.hasEntry("Book")) {
+                return BIFF5;
+            }
+            // Зашифрованный XLSX тоже хранится в OLE2 - его откроет WorkbookFactory
+            return root.hasEntry("EncryptedPackage") ? XLSX : UNKNOWN;
+        }
+    }
+
+    // Первая запись потока - BOF: идентификатор, длина, версия BIFF
+    private static boolean isBiff8(DirectoryNode root, String entry) throws IOException {
+        try (DocumentInputStream dis = root.createDocumentInputStream(entry)) {
+            if (dis.available() < 6 || dis.readUShort() != BOF_SID) {
+                return true; // Не похоже на BIFF5 - пусть разбирается HSSF
+            }
+            dis.readUShort();
+            return dis.readUShort() == BIFF8_VERSION;
+        }
+    }
+}
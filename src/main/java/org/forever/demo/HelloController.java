@@ -2,6 +2,7 @@ package org.forever.demo;
 
 import de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon;
 import de.jensd.fx.glyphs.fontawesome.FontAwesomeIconView;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Bounds;
@@ -27,6 +28,7 @@ import javafx.event.ActionEvent;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
 import javafx.scene.Scene;
@@ -37,24 +39,27 @@ import javafx.geometry.Insets;
 import javafx.util.Duration;
 import org.forever.demo.ComparisonResult.DetailedComparisonData;
 import org.forever.demo.ComparisonResult.MismatchInfo;
-import javafx.scene.layout.GridPane;
 
 import java.io.File;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static org.forever.demo.ExcelComparator.*;
-import static org.forever.demo.ExcelConverter.convertFile;
 
 public class HelloController {
+    private static final Logger logger = Logger.getLogger(HelloController.class.getName());
+
     public Button compareButton;
     public Button printButton;
     public Button eyeButton;
     @FXML
     private Button clearButton;
     @FXML
+    private Button batchButton;
+    @FXML
     private TextArea fileDropArea1;
     @FXML
     private TextArea fileDropArea2;
@@ -75,6 +80,13 @@ public class HelloController {
     private DetailedComparisonData detailedComparisonData = null;
     private Stage detailedViewStage = null;
     private String counterpartyName;
+    // Вывод расхождений по мере сравнения: очередь от потока сравнения и таймер, дописывающий их в окно
+    private SummaryFeed summaryFeed;
+    private AnimationTimer summaryTimer;
+
+    // Как часто дописывать новые расхождения (примерно один кадр) и сколько дат за раз
+    private static final long SUMMARY_REFRESH_NANOS = 16_000_000L;
+    private static final int MAX_DATES_PER_REFRESH = 50;
 
     // Style constants
     private static final String STYLE_ERROR = "-fx-fill: #d56949;";
@@ -107,10 +119,17 @@ public class HelloController {
         eyeIcon.setFill(Paint.valueOf("#E3E3E3"));
         eyeButton.setGraphic(eyeIcon);
 
+        FontAwesomeIconView folderIcon = new FontAwesomeIconView(FontAwesomeIcon.FOLDER_OPEN);
+        folderIcon.setSize("20px");
+        folderIcon.setFill(Paint.valueOf("#E3E3E3"));
+        batchButton.setGraphic(folderIcon);
+
         eyeButton.setDisable(true);
         updateCompareButtonState();
 
         clearButton.setOnAction(_ -> {
+            // Прерываем вывод незавершенного сравнения
+            stopSummaryStream();
             // Закрываем окно детального просмотра, если оно открыто
             if (detailedViewStage != null && detailedViewStage.isShowing()) {
                 detailedViewStage.close();
@@ -231,39 +250,38 @@ public class HelloController {
 
         final boolean compareByAbsoluteValue = compareByAbsoluteValueCheckBox.isSelected();
 
+        // Расхождения выводятся по мере сравнения, над индикатором прогресса
+        stopSummaryStream();
+        SummaryFeed feed = new SummaryFeed();
+        startSummaryStream(feed, progressBox, statusText);
+
         // Надо сделать все методы парсинга и сравнения чтобы они выбрасывали исключения вместо показа Alert
         // А показывать Alert только в UI потоке
         CompletableFuture.runAsync(() -> {
             try {
-                // >>> НАЧАЛО ИЗМЕНЕНИЙ
-                // Ищем имя контрагента перед сравнением
-                this.counterpartyName = ExcelComparator.findCounterpartyName(new File[]{file1, file2});
-                // <<< КОНЕЦ ИЗМЕНЕНИЙ
-
-                ExcelConverter.ExcelFileInfo fileInfo1 = ExcelConverter.checkExcelVersion(file1);
-                ExcelConverter.ExcelFileInfo fileInfo2 = ExcelConverter.checkExcelVersion(file2);
-
-                File convertedFile = convertFile(file1, file2);
-                if (convertedFile != null) {
-                    if (fileInfo1.isConvertible()) {
-                        file1 = convertedFile;
-                    } else if (fileInfo2.isConvertible()) {
-                        file2 = convertedFile;
-                    }
-                }
-
-                ComparisonSettings settings = new ComparisonSettings(false, false);
-                Map<String, Map<String, List<List<String>>>> megaMap = parseFiles(new File[]{file1, file2}, settings);
-                ComparisonResult result = compareDataInMegaMap(megaMap, compareByAbsoluteValue, settings.isComparePrihodRashod());
+                // Загрузка, поиск контрагента, парсинг и сравнение - каждый файл открывается один раз
+                ComparisonSettings settings = new ComparisonSettings(compareByAbsoluteValue, false);
+                settings.setErrorSink(this::showEngineError);
+                ComparisonPipeline.Outcome outcome = ComparisonPipeline.run(new File[]{file1, file2}, settings, feed);
+                this.counterpartyName = outcome.counterpartyName();
+                ComparisonResult result = outcome.result();
 
                 Platform.runLater(() -> {
+                    if (feed.isCancelled()) {
+                        return; // Результат уже не нужен: окно очищено или запущено новое сравнение
+                    }
+                    summaryTimer.stop();
                     // Сохраняем детальные данные
                     this.detailedComparisonData = result.detailedData();
                     // Активируем или деактивируем кнопку просмотра
                     eyeButton.setDisable(this.detailedComparisonData == null);
 
                     List<String> differences = result.summaryLines();
-                    if (differences.isEmpty()) {
+                    if (feed.getPublishedDates() > 0) {
+                        // Большая часть уже выведена - дописываем остаток очереди и убираем индикатор
+                        appendStreamedDifferences(feed, progressBox, Integer.MAX_VALUE);
+                        outputTextFlow.getChildren().remove(progressBox);
+                    } else if (differences.isEmpty()) {
                         outputTextFlow.getChildren().clear();
                         outputTextFlow.getChildren().add(createStyledText("Данные идентичны!", STYLE_HIGHLIGHT + " -fx-font-size: 14px;"));
                     } else {
@@ -273,6 +291,10 @@ public class HelloController {
 
             } catch (Exception e) {
                 Platform.runLater(() -> {
+                    if (feed.isCancelled()) {
+                        return;
+                    }
+                    summaryTimer.stop();
                     // При ошибке также сбрасываем данные и кнопку
                     this.detailedComparisonData = null;
                     eyeButton.setDisable(true);
@@ -284,6 +306,80 @@ public class HelloController {
         });
     }
 
+    /**
+     * Пакетная сверка всех актов из выбранной папки. Отчет сохраняется в ту же папку,
+     * в окне выводятся итоги и путь к отчету.
+     */
+    @FXML
+    private void handleBatchButtonAction() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Папка с актами сверки");
+        File directory = chooser.showDialog(batchButton.getScene().getWindow());
+        if (directory == null) {
+            return;
+        }
+
+        stopSummaryStream();
+        this.detailedComparisonData = null;
+        eyeButton.setDisable(true);
+        batchButton.setDisable(true);
+
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setMaxSize(50, 50);
+        Text statusText = new Text("Идёт пакетная сверка: " + directory.getName());
+        statusText.setStyle(STYLE_INFO + " -fx-font-size: 14px;");
+        VBox progressBox = new VBox(10, statusText, progressIndicator);
+        progressBox.setAlignment(Pos.CENTER);
+        progressBox.setStyle("-fx-padding: 20px;");
+        outputTextFlow.getChildren().setAll(progressBox);
+
+        final boolean compareByAbsoluteValue = compareByAbsoluteValueCheckBox.isSelected();
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                BatchReconciliation.Report report = BatchReconciliation.run(directory,
+                        new ComparisonSettings(compareByAbsoluteValue, false));
+                File reportFile = report.write();
+
+                Platform.runLater(() -> {
+                    batchButton.setDisable(false);
+                    outputTextFlow.getChildren().clear();
+                    outputTextFlow.getChildren().addAll(createKeyValueText("Пакетная сверка: " + directory.getName()));
+                    for (BatchReconciliation.PairResult result : report.results()) {
+                        String style = switch (result.status()) {
+                            case MATCH -> STYLE_SUCCESS;
+                            case MISMATCH -> STYLE_HIGHLIGHT;
+                            case ERROR -> STYLE_ERROR;
+                        };
+                        String details = switch (result.status()) {
+                            case MATCH -> "совпадает";
+                            case MISMATCH -> "дат с расхождениями: " + result.mismatchedDates();
+                            case ERROR -> "ошибка: " + result.error();
+                        };
+                        outputTextFlow.getChildren().add(createStyledText(
+                                result.pair().counterparty() + " - " + details, style));
+                    }
+                    if (!report.unpaired().isEmpty()) {
+                        outputTextFlow.getChildren().add(createStyledText(
+                                "Файлов без пары: " + report.unpaired().size(), STYLE_WARNING));
+                    }
+                    outputTextFlow.getChildren().add(createStyledText(String.format(
+                            "\nПар: %d, совпадает: %d, с расхождениями: %d, ошибок: %d, время: %d мс",
+                            report.results().size(), report.count(BatchReconciliation.Status.MATCH),
+                            report.count(BatchReconciliation.Status.MISMATCH),
+                            report.count(BatchReconciliation.Status.ERROR), report.millis()), STYLE_BOLD_INFO));
+                    outputTextFlow.getChildren().add(createStyledText("Отчет: " + reportFile.getAbsolutePath(), STYLE_INFO));
+                });
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Ошибка пакетной сверки " + directory.getAbsolutePath(), e);
+                Platform.runLater(() -> {
+                    batchButton.setDisable(false);
+                    outputTextFlow.getChildren().setAll(createStyledText("Ошибка: " + ErrorSink.describe(e), STYLE_ERROR));
+                });
+            }
+        });
+    }
+
     private void setupDragAndDrop(TextArea dropArea, boolean isFirstFile) {
         dropArea.setOnDragOver(event -> {
             if (event.getGestureSource() != dropArea && event.getDragboard().hasFiles()) {
@@ -347,25 +443,87 @@ public class HelloController {
         alert.showAndWait();
     }
 
+    // Ошибки чтения файлов из движка сравнения: в лог и в окно (вызывается из рабочего потока)
+    private void showEngineError(String message, Exception e) {
+        ErrorSink.LOGGING.report(message, e);
+        String content = e != null ? message + "\n" + ErrorSink.describe(e) : message;
+        Platform.runLater(() -> showAlert(AlertType.ERROR, "Ошибка", null, content));
+    }
+
     //Показываем различия и подсвечиваем разными цветами
     private void displayDifferences(List<String> differences) {
         outputTextFlow.getChildren().clear();
+        outputTextFlow.getChildren().addAll(createDifferenceNodes(differences));
+    }
+
+    // Узлы TextFlow для строк сводки
+    private List<Node> createDifferenceNodes(List<String> differences) {
+        List<Node> nodes = new ArrayList<>();
 
         for (String difference : differences) {
             if (difference.contains("<span")) {
                 // Обработка строки с HTML-тегами <span>
-                outputTextFlow.getChildren().add(createColoredTextFromSpan(difference));
+                nodes.add(createColoredTextFromSpan(difference));
             } else if (difference.contains("Итоговая сумма несовпавших значений:")) {
                 // Специальное оформление для строки "Итоговая сумма несовпавших значений:"
-                outputTextFlow.getChildren().add(createStyledText(difference, STYLE_INFO + " -fx-font-size: 14px;"));
+                nodes.add(createStyledText(difference, STYLE_INFO + " -fx-font-size: 14px;"));
             } else if (difference.contains("Различия найдены для даты:") ||
                     difference.contains("Различия найдены для продукта:")) {
                 // Обрабатываем строки с датой или продуктом
-                displayKeyValueText(difference);
+                nodes.addAll(createKeyValueText(difference));
             } else {
                 // Для обычных строк
-                outputTextFlow.getChildren().add(new Text(difference + "\n"));
+                nodes.add(new Text(difference + "\n"));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Запускает таймер, который раз в кадр забирает из feed новые расхождения
+     * и дописывает их перед индикатором прогресса, обновляя счетчик и процент сравнения.
+     */
+    private void startSummaryStream(SummaryFeed feed, Node progressBox, Text statusText) {
+        summaryFeed = feed;
+        summaryTimer = new AnimationTimer() {
+            private long lastRefresh;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastRefresh < SUMMARY_REFRESH_NANOS) {
+                    return;
+                }
+                lastRefresh = now;
+
+                appendStreamedDifferences(feed, progressBox, MAX_DATES_PER_REFRESH);
+                if (feed.getProgress() > 0) {
+                    statusText.setText(String.format("Сравнение: %d%%, дат с расхождениями: %d",
+                            Math.round(feed.getProgress() * 100), feed.getPublishedDates()));
+                }
             }
+        };
+        summaryTimer.start();
+    }
+
+    // Дописывает накопившиеся расхождения одной пачкой, чтобы не перестраивать TextFlow на каждую строку
+    private void appendStreamedDifferences(SummaryFeed feed, Node progressBox, int maxDates) {
+        List<String> lines = feed.drain(maxDates);
+        if (lines.isEmpty()) {
+            return;
+        }
+        List<Node> children = outputTextFlow.getChildren();
+        int insertAt = children.indexOf(progressBox);
+        children.addAll(insertAt >= 0 ? insertAt : children.size(), createDifferenceNodes(lines));
+    }
+
+    private void stopSummaryStream() {
+        if (summaryTimer != null) {
+            summaryTimer.stop();
+            summaryTimer = null;
+        }
+        if (summaryFeed != null) {
+            summaryFeed.cancel();
+            summaryFeed = null;
         }
     }
 
@@ -429,26 +587,27 @@ public class HelloController {
             newWindow.setTitle("Детальный просмотр расхождений");
             SplitPane splitPane = new SplitPane();
 
-            Node view1 = createDetailedTableView(detailedComparisonData.file1Data(), detailedComparisonData.mismatches(), true);
-            Node view2 = createDetailedTableView(detailedComparisonData.file2Data(), detailedComparisonData.mismatches(), false);
+            DetailedActView view1 = createDetailedTableView(detailedComparisonData.file1Data(), detailedComparisonData.mismatches(), true);
+            DetailedActView view2 = createDetailedTableView(detailedComparisonData.file2Data(), detailedComparisonData.mismatches(), false);
 
-            // Передаем в ScrollPane чистый GridPane (view1 и view2)
-            ScrollPane scrollPane1 = new ScrollPane(view1);
-            ScrollPane scrollPane2 = new ScrollPane(view2);
-
-            scrollPane1.setFitToWidth(true);
-            scrollPane2.setFitToWidth(true);
+            // ListView прокручивается сам, ScrollPane вокруг него не нужен
+            splitPane.getItems().addAll(view1.getListView(), view2.getListView());
+            splitPane.setDividerPositions(0.5);
 
-            scrollPane1.getStyleClass().add("custom-scroll-pane");
-            scrollPane2.getStyleClass().add("custom-scroll-pane");
+            CheckBox syncScrollCheckBox = new CheckBox("Синхронная прокрутка");
+            syncScrollCheckBox.setSelected(true);
+            syncScrollCheckBox.setStyle("-fx-text-fill: #a9b7c6;");
+            DetailedActView.synchronize(view1, view2, syncScrollCheckBox.selectedProperty());
 
-            splitPane.getItems().addAll(scrollPane1, scrollPane2);
-            splitPane.setDividerPositions(0.5);
+            BorderPane windowLayout = new BorderPane();
+            windowLayout.setTop(createMismatchNavigation(
+                    MismatchIndex.build(detailedComparisonData.mismatches(), view1, view2), view1, view2, syncScrollCheckBox));
+            windowLayout.setCenter(splitPane);
 
             double initialWidth = 1240;
             double initialHeight = 620;
 
-            Scene newWindowScene = new Scene(splitPane, initialWidth, initialHeight);
+            Scene newWindowScene = new Scene(windowLayout, initialWidth, initialHeight);
 
             // Используем ваш надежный способ загрузки CSS
             try {
@@ -474,112 +633,80 @@ public class HelloController {
     }
 
     /**
-     * Создает таблицу (GridPane) для детального просмотра данных одного из файлов.
+     * Создает виртуализированный список для детального просмотра данных одного из файлов.
      *
-     * @param fileData   Данные для отображения (ключ - дата, значение - строки с числами).
+     * @param fileData   Данные для отображения (строки, сгруппированные по дате).
      * @param mismatches Информация о несовпадениях для подсветки.
      * @param isFile1    True, если это данные для файла 1 (для выбора цвета подсветки).
-     * @return Узел (GridPane), содержащий отформатированную таблицу.
+     * @return Просмотр (ListView), который создает узлы только для видимых строк.
      */
-    private Node createDetailedTableView(Map<String, List<List<String>>> fileData, Map<String, MismatchInfo> mismatches, boolean isFile1) {
-        GridPane grid = new GridPane();
-        grid.setPadding(new Insets(10));
-
-        // Ваши стили
+    private DetailedActView createDetailedTableView(ActTable fileData, Map<String, MismatchInfo> mismatches, boolean isFile1) {
         String highlightStyle = isFile1 ? STYLE_HIGHLIGHT : STYLE_SUCCESS;
-        String highlightStyleFull = highlightStyle + " -fx-font-weight: bold;";
-        String dateHeaderColor = "-fx-fill: #b3340f;";
-
-        int rowIndex = 0;
-        List<String> sortedKeys = fileData.keySet().stream().sorted().toList();
-
-        Pattern datePattern = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{2,4}");
-
-        for (String key : sortedKeys) {
-            Text dateHeader = new Text(key);
-            dateHeader.setStyle(dateHeaderColor + " -fx-font-weight: bold; -fx-font-size: 14px;");
-
-            StackPane headerContainer = new StackPane(dateHeader);
-            headerContainer.setPadding(new Insets(10, 0, 5, 0));
-            headerContainer.setAlignment(Pos.CENTER_LEFT);
-            headerContainer.setStyle("-fx-border-color: #515658; -fx-border-width: 0 0 1px 0;");
-
-            // Увеличиваем columnspan для заголовка, чтобы он точно покрывал всю ширину
-            grid.add(headerContainer, 0, rowIndex++, 5, 1);
-
-            List<List<String>> allRowsForKey = fileData.get(key);
-            if (allRowsForKey == null || allRowsForKey.isEmpty()) continue;
-
-            MismatchInfo mismatchInfo = mismatches.get(key);
-            List<List<String>> uniqueRows = (mismatchInfo != null)
-                    ? (isFile1 ? mismatchInfo.uniqueRowsFile1() : mismatchInfo.uniqueRowsFile2())
-                    : Collections.emptyList();
-            Set<List<String>> uniqueRowsSet = new HashSet<>(uniqueRows);
-
-            for (List<String> rowData : allRowsForKey) {
-                boolean shouldHighlight = uniqueRowsSet.contains(rowData);
-
-                // --- НАЧАЛО ИЗМЕНЕНИЙ: Проверяем, является ли строка итоговой/описательной ---
-                // Условие: строка состоит из одной ячейки, и эта ячейка не является просто числом.
-                if (rowData.size() == 1 && !isNumeric(rowData.getFirst())) {
-                    String value = rowData.getFirst();
-                    Text summaryText = new Text(value);
-                    summaryText.setStyle(shouldHighlight ? highlightStyleFull : STYLE_INFO);
-                    // Включаем перенос текста, чтобы он не выходил за пределы
-                    summaryText.setWrappingWidth(550); // Ширина, в рамках которой текст будет переноситься
-
-                    StackPane summaryContainer = new StackPane(summaryText);
-                    summaryContainer.setAlignment(Pos.CENTER_LEFT);
-                    summaryContainer.setPadding(new Insets(8, 8, 8, 8));
-                    summaryContainer.setStyle("-fx-border-color: #515658; -fx-border-width: 0 0 1px 0;");
-
-                    // Добавляем контейнер в сетку, указывая, что он должен занимать 5 колонок в ширину
-                    grid.add(summaryContainer, 0, rowIndex, 5, 1);
-
-                } else {
-                    // --- СТАРАЯ ЛОГИКА для обычных строк с несколькими ячейками ---
-                    for (int colIndex = 0; colIndex < rowData.size(); colIndex++) {
-                        String value = rowData.get(colIndex);
-                        Text cellText = new Text(value);
-                        cellText.setStyle(shouldHighlight ? highlightStyleFull : STYLE_INFO);
-
-                        StackPane cellContainer = new StackPane(cellText);
-
-                        double prefWidth;
-                        boolean isShortContent = isNumeric(value) || datePattern.matcher(value).lookingAt();
-
-                        if (isShortContent) {
-                            prefWidth = 120;
-                        } else {
-                            prefWidth = 380;
-                        }
-
-                        cellContainer.setPrefWidth(prefWidth);
-                        cellContainer.setAlignment(Pos.TOP_LEFT);
-                        cellContainer.setStyle("-fx-border-color: #515658; -fx-border-width: 0 1px 1px 1px;");
-                        cellContainer.setPadding(new Insets(5, 8, 5, 8));
-
-                        grid.add(cellContainer, colIndex, rowIndex);
-                    }
-                }
-                // --- КОНЕЦ ИЗМЕНЕНИЙ ---
+        return new DetailedActView(fileData, mismatches, isFile1, STYLE_INFO, highlightStyle);
+    }
 
-                rowIndex++;
+    /**
+     * Панель перехода между расхождениями: кнопки "предыдущее/следующее", счетчик и флажок
+     * синхронной прокрутки. Найденная строка выделяется в своем файле, а второй файл
+     * прокручивается к той же дате.
+     */
+    private HBox createMismatchNavigation(MismatchIndex index, DetailedActView view1, DetailedActView view2,
+                                          CheckBox syncScrollCheckBox) {
+        Button previousButton = new Button("Предыдущее");
+        Button nextButton = new Button("Следующее");
+        Label positionLabel = new Label();
+        positionLabel.setStyle("-fx-text-fill: #a9b7c6;");
+
+        FontAwesomeIconView previousIcon = new FontAwesomeIconView(FontAwesomeIcon.CHEVRON_UP);
+        previousIcon.setFill(Paint.valueOf("#E3E3E3"));
+        previousButton.setGraphic(previousIcon);
+        FontAwesomeIconView nextIcon = new FontAwesomeIconView(FontAwesomeIcon.CHEVRON_DOWN);
+        nextIcon.setFill(Paint.valueOf("#E3E3E3"));
+        nextButton.setGraphic(nextIcon);
+
+        // Текущая позиция в индексе (-1 - еще не переходили)
+        int[] current = {-1};
+        Runnable update = () -> {
+            previousButton.setDisable(current[0] <= 0);
+            nextButton.setDisable(current[0] >= index.size() - 1);
+            positionLabel.setText(index.isEmpty()
+                    ? "Расхождений нет"
+                    : current[0] < 0
+                    ? "Расхождений: " + index.size()
+                    : String.format("Расхождение %d из %d (%s)", current[0] + 1, index.size(), index.dateKey(current[0])));
+        };
+        Runnable show = () -> {
+            int position = current[0];
+            DetailedActView own = index.isFile1(position) ? view1 : view2;
+            DetailedActView other = index.isFile1(position) ? view2 : view1;
+            own.showItem(index.itemOffset(position));
+            if (syncScrollCheckBox.isSelected()) {
+                other.showDate(index.dateKey(position));
             }
-            rowIndex++;
-        }
+            update.run();
+        };
 
-        StackPane backgroundContainer = new StackPane(grid);
-        backgroundContainer.setStyle("-fx-background-color: #1e1f22;");
+        previousButton.setOnAction(_ -> {
+            current[0]--;
+            show.run();
+        });
+        nextButton.setOnAction(_ -> {
+            current[0]++;
+            show.run();
+        });
+        update.run();
 
-        return backgroundContainer;
+        HBox navigation = new HBox(10, previousButton, nextButton, positionLabel, syncScrollCheckBox);
+        navigation.setAlignment(Pos.CENTER_LEFT);
+        navigation.setPadding(new Insets(8, 10, 8, 10));
+        return navigation;
     }
 
     /**
-     * Отображает текст в формате "Префикс: Значение" с разными стилями
+     * Создает текст в формате "Префикс: Значение" с разными стилями
      * @param keyValueText Строка в формате "Префикс: Значение"
      */
-    private void displayKeyValueText(String keyValueText) {
+    private List<Node> createKeyValueText(String keyValueText) {
         String[] parts = keyValueText.split(": ");
         if (parts.length == 2) {
             String prefix = parts[0] + ": ";
@@ -593,8 +720,9 @@ public class HelloController {
             Text keyText = new Text(key);
             keyText.setStyle(STYLE_BOLD_SUCCESS);
 
-            outputTextFlow.getChildren().addAll(prefixText, keyText, new Text("\n"));
+            return List.of(prefixText, keyText, new Text("\n"));
         }
+        return List.of();
     }
 
     public void setPreviewImage(Image image) {
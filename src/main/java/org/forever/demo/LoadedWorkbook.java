@@ -0,0 +1,266 @@
+package org.forever.demo;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Книга Excel, загруженная один раз на всё сравнение.
+ * Формат определяется заранее (см. ExcelFormat), после чего одна и та же книга используется
+ * и для поиска контрагента, и для парсинга.
+ * Старый BIFF5 (Excel 5.0/7.0) читается напрямую Biff5StreamingReader; в XLSX он конвертируется
+ * только если нужна книга целиком (специальный парсинг накладных).
+ * Большие XLSX и XLS вместо полной загрузки читаются потоково за один проход (см. ParserEngine).
+ * Если акт с таким же содержимым уже разбирался, результат берется из ParseCache: книга не открывается
+ * и даже формат не определяется (ключ кэша зависит только от содержимого, а в кэше только распознанные акты).
+ */
+public class LoadedWorkbook implements Closeable {
+    private static final Logger logger = Logger.getLogger(LoadedWorkbook.class.getName());
+
+    private final File sourceFile;
+    // null, пока формат не определен (при попадании в кэш разбора он не нужен)
+    private ExcelFormat format;
+    private final StageTimings timings;
+    private final ParseCache cache;
+    private String cacheKey;
+    private ParseCache.Entry cachedAct;
+    private File workbookFile;
+    private ExcelConverter.ExcelFileInfo fileInfo;
+    private boolean streaming;
+    private ActRowParser streamedAct;
+    private Workbook workbook;
+    private String errorMessage;
+    private Exception error;
+
+    private LoadedWorkbook(File sourceFile, StageTimings timings, ParseCache cache) {
+        this.sourceFile = sourceFile;
+        this.timings = timings;
+        this.cache = cache;
+        this.workbookFile = sourceFile;
+    }
+
+    public static LoadedWorkbook load(File file, StageTimings timings) {
+        return load(file, timings, ParserEngine.DOM);
+    }
+
+    /**
+     * Загружает все файлы сравнения параллельно (каждый на своем виртуальном потоке).
+     * Порядок книг в результате совпадает с порядком файлов.
+     */
+    public static List<LoadedWorkbook> loadAll(File[] files, StageTimings timings, ParserEngine engine) {
+        return loadAll(files, timings, engine, null);
+    }
+
+    /**
+     * @param cache Кэш разобранных актов или null, чтобы всегда читать файлы
+     */
+    public static List<LoadedWorkbook> loadAll(File[] files, StageTimings timings, ParserEngine engine, ParseCache cache) {
+        return ParallelTasks.map(Arrays.asList(files), file -> load(file, timings, engine, cache));
+    }
+
+    public static LoadedWorkbook load(File file, StageTimings timings, ParserEngine engine) {
+        return load(file, timings, engine, null);
+    }
+
+    /**
+     * Определяет формат файла и открывает книгу подходящим способом. Исключения не выбрасываются:
+     * если книгу открыть не удалось, ошибка сохраняется и getWorkbook() вернет null.
+     */
+    public static LoadedWorkbook load(File file, StageTimings timings, ParserEngine engine, ParseCache cache) {
+        LoadedWorkbook loaded = new LoadedWorkbook(file, timings, cache);
+        if (cache != null) {
+            try {
+                loaded.cacheKey = timings.measure("кэш разбора", () -> ParseCache.key(file));
+                loaded.cachedAct = timings.measure("кэш разбора", () -> cache.get(loaded.cacheKey));
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Не удалось проверить кэш разбора: " + file.getName(), e);
+            }
+            if (loaded.cachedAct != null) {
+                return loaded; // Акт уже разобран, книга и ее формат не нужны
+            }
+        }
+        if (!loaded.detectFormat()) {
+            return loaded;
+        }
+        if (loaded.format == ExcelFormat.BIFF5 || engine.useStreaming(file.length())) {
+            // Книгу не открываем: акт будет прочитан потоково при первом обращении.
+            // BIFF5 читается только так - HSSFWorkbook его не открывает
+            loaded.streaming = true;
+            return loaded;
+        }
+        loaded.openWorkbook();
+        return loaded;
+    }
+
+    /**
+     * Книга, акт которой уже разобран (например, на первом проходе пакетной сверки): файл не читается,
+     * пока книга не понадобится целиком.
+     */
+    public static LoadedWorkbook parsed(File file, StageTimings timings, ParseCache.Entry act) {
+        LoadedWorkbook loaded = new LoadedWorkbook(file, timings, null);
+        loaded.cachedAct = act;
+        return loaded;
+    }
+
+    // Определяет формат по сигнатуре и каталогу OLE2; false и ошибка в полях, если это не книга Excel
+    private boolean detectFormat() {
+        try {
+            format = timings.measure("определение формата", () -> ExcelFormat.detect(sourceFile));
+        } catch (Exception e) {
+            setError("Ошибка при работе с файлом: " + getName(), e);
+            return false;
+        }
+        if (format == ExcelFormat.UNKNOWN) {
+            setError("Ошибка при работе с файлом: " + getName(), new IOException("Файл не является книгой Excel: " + getName()));
+            return false;
+        }
+        fileInfo = new ExcelConverter.ExcelFileInfo(format.getVersion(), false, format.getDetails());
+        return true;
+    }
+
+    // Открывает книгу целиком, старый BIFF5 - после конвертации. Ошибка сохраняется в полях
+    private void openWorkbook() {
+        if (format == null && !detectFormat()) {
+            return; // Книга из кэша разбора понадобилась целиком, но файл уже не читается
+        }
+        if (format == ExcelFormat.BIFF5) {
+            // Книга целиком нужна только для накладных - конвертируем один раз и открываем результат конвертации
+            try {
+                // Результат хранится в кэше конвертаций, повторно этот файл конвертироваться не будет
+                File convertedFile = timings.measure("конвертация BIFF5", () -> ExcelConverter.convertBiff5ToXlsx(sourceFile));
+                workbookFile = convertedFile;
+                fileInfo = new ExcelConverter.ExcelFileInfo(
+                        "Excel 5.0/7.0 (BIFF5)", true, "Старый формат Excel, будет преобразован");
+                workbook = open(convertedFile, timings);
+            } catch (Exception e) {
+                setError("Ошибка при конвертации файла: " + getName(), e);
+            }
+            return;
+        }
+        try {
+            workbook = open(workbookFile, timings);
+        } catch (Exception e) {
+            setError("Ошибка при работе с файлом: " + getName(), e);
+        }
+    }
+
+    private static Workbook open(File file, StageTimings timings) throws Exception {
+        // Книга открывается по файлу, а не из потока: XLSX читается как ZipFile по записям,
+        // сектора XLS отображаются в память - файл не копируется в память целиком.
+        // Файл остается открытым до close()
+        Workbook workbook = timings.measure("открытие книги", () -> WorkbookFactory.create(file, null, true));
+        timings.countWorkbookOpen();
+        return workbook;
+    }
+
+    private void setError(String message, Exception e) {
+        fileInfo = new ExcelConverter.ExcelFileInfo("Неизвестный формат", false, "Формат файла не определен");
+        errorMessage = message;
+        error = e;
+    }
+
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    public String getName() {
+        return sourceFile.getName();
+    }
+
+    // null, если акт взят из кэша разбора и формат файла не определялся
+    public ExcelConverter.ExcelFileInfo getFileInfo() {
+        return fileInfo;
+    }
+
+    /**
+     * @return разобранный акт из кэша или null, если файл нужно читать
+     */
+    public ParseCache.Entry cachedAct() {
+        return cachedAct;
+    }
+
+    // true, если результат разбора этого файла можно сохранить в кэш
+    public boolean isCacheable() {
+        return cacheKey != null && cachedAct == null;
+    }
+
+    /**
+     * Сохраняет в кэш результат разбора акта, чтобы в следующий раз файл не открывать.
+     *
+     * @param skippedRows Пропущенные строки этого файла: причина -> количество
+     */
+    public void rememberAct(ActTable table, String counterpartyName, Map<String, Integer> skippedRows) {
+        if (isCacheable()) {
+            cache.put(cacheKey, new ParseCache.Entry(table, counterpartyName, Map.copyOf(skippedRows)));
+        }
+    }
+
+    /**
+     * Результат потокового чтения акта (вместе с контрагентом). Лист читается один раз,
+     * повторные вызовы возвращают тот же результат.
+     *
+     * @return null, если книга читается обычным способом или потоковое чтение не удалось
+     */
+    public synchronized ActRowParser streamedAct() {
+        if (!streaming) {
+            return null;
+        }
+        if (streamedAct == null) {
+            try {
+                streamedAct = timings.measure("потоковое чтение", () -> {
+                    ActRowParser parser = new ActRowParser(getName());
+                    switch (format) {
+                        case XLSX -> XlsxStreamingReader.read(workbookFile, parser);
+                        case BIFF5 -> Biff5StreamingReader.read(workbookFile, parser);
+                        default -> XlsStreamingReader.read(workbookFile, parser);
+                    }
+                    return parser;
+                });
+                timings.countWorkbookOpen();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Потоковое чтение не удалось, файл будет открыт целиком: " + getName(), e);
+                streaming = false;
+            }
+        }
+        return streamedAct;
+    }
+
+    /**
+     * Книга целиком. Для потокового режима открывается только по требованию
+     * (например, для специального парсинга накладных).
+     *
+     * @return null, если книгу открыть не удалось
+     */
+    public synchronized Workbook getWorkbook() {
+        if (workbook == null && error == null) {
+            openWorkbook();
+        }
+        return workbook;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public void close() {
+        if (workbook == null) {
+            return;
+        }
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Не удалось закрыть книгу: " + getName(), e);
+        }
+    }
+}
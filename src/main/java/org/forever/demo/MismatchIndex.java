@@ -0,0 +1,87 @@
+package org.forever.demo;
+
+import org.forever.demo.ComparisonResult.MismatchInfo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс несовпавших строк обоих файлов для перехода между расхождениями в окне детального просмотра.
+ * Каждая подсвеченная строка - запись (дата, файл, позиция в списке просмотра); записи лежат
+ * в параллельных массивах, отсортированных по дате (хронологически), затем по файлу и позиции.
+ * Переход к следующему/предыдущему расхождению - просто соседняя запись, без обхода списков.
+ */
+public final class MismatchIndex {
+
+    // Порядок дат тот же, что в ActTable.CHRONOLOGICAL
+    private static final Comparator<String> CHRONOLOGICAL_KEYS = Comparator
+            .comparing(ActTable::parseDateKey, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Comparator.naturalOrder());
+
+    private final String[] dateKeys;
+    private final boolean[] inFile1;
+    private final int[] itemOffsets;
+
+    private MismatchIndex(String[] dateKeys, boolean[] inFile1, int[] itemOffsets) {
+        this.dateKeys = dateKeys;
+        this.inFile1 = inFile1;
+        this.itemOffsets = itemOffsets;
+    }
+
+    /**
+     * @param mismatches Несовпавшие строки по датам (из DetailedComparisonData)
+     * @param view1      Просмотр файла 1 - по нему строки переводятся в позиции списка
+     * @param view2      Просмотр файла 2
+     */
+    public static MismatchIndex build(Map<String, MismatchInfo> mismatches, DetailedActView view1, DetailedActView view2) {
+        List<String> keys = new ArrayList<>(mismatches.keySet());
+        keys.sort(CHRONOLOGICAL_KEYS);
+
+        int size = 0;
+        for (MismatchInfo info : mismatches.values()) {
+            size += info.uniqueRowsFile1().length + info.uniqueRowsFile2().length;
+        }
+
+        String[] dateKeys = new String[size];
+        boolean[] inFile1 = new boolean[size];
+        int[] itemOffsets = new int[size];
+        int position = 0;
+        for (String key : keys) {
+            MismatchInfo info = mismatches.get(key);
+            // Номера строк в MismatchInfo отсортированы, а позиции в списке растут вместе с ними
+            for (int row : info.uniqueRowsFile1()) {
+                dateKeys[position] = key;
+                inFile1[position] = true;
+                itemOffsets[position++] = view1.itemIndexOf(row);
+            }
+            for (int row : info.uniqueRowsFile2()) {
+                dateKeys[position] = key;
+                itemOffsets[position++] = view2.itemIndexOf(row);
+            }
+        }
+        return new MismatchIndex(dateKeys, inFile1, itemOffsets);
+    }
+
+    public int size() {
+        return dateKeys.length;
+    }
+
+    public boolean isEmpty() {
+        return dateKeys.length == 0;
+    }
+
+    public String dateKey(int position) {
+        return dateKeys[position];
+    }
+
+    public boolean isFile1(int position) {
+        return inFile1[position];
+    }
+
+    // Позиция строки в списке просмотра своего файла
+    public int itemOffset(int position) {
+        return itemOffsets[position];
+    }
+}
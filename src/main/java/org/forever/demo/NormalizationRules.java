@@ -0,0 +1,168 @@
+package org.forever.demo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Правила замен для нормализации наименований товаров.
+ * Список берется из ресурса /rules/normalization-rules.txt; если рядом с программой лежит
+ * файл normalization-rules.txt, используется он и перечитывается при каждом его изменении,
+ * так что правила для нового поставщика можно добавить без выпуска версии и перезапуска.
+ * "Рядом с программой" - в папке, где лежит jar программы (при запуске из IDE - в папке с классами),
+ * независимо от рабочей папки, из которой программа запущена.
+ * <p>
+ * Текстовые правила собираются в один автомат Ахо-Корасик и применяются за один проход,
+ * регулярные выражения компилируются один раз и применяются после них в порядке файла.
+ */
+public final class NormalizationRules {
+    private static final Logger logger = Logger.getLogger(NormalizationRules.class.getName());
+
+    private static final String RESOURCE = "/rules/normalization-rules.txt";
+    private static final File OVERRIDE_FILE = new File(applicationDirectory(), "normalization-rules.txt");
+    private static final String SEPARATOR = "=>";
+    private static final String REGEX_PREFIX = "regex:";
+
+    /**
+     * Правило с регулярным выражением.
+     *
+     * @param pattern     Скомпилированное выражение
+     * @param replacement Замена (с группами $1, $2...)
+     */
+    public record RegexRule(Pattern pattern, String replacement) {
+    }
+
+    private static NormalizationRules builtIn;
+    private static NormalizationRules override;
+    private static long overrideModified = Long.MIN_VALUE;
+
+    private final AhoCorasick literals;
+    private final String[] replacements;
+    private final List<RegexRule> regexRules;
+
+    private NormalizationRules(List<String> patterns, List<String> replacements, List<RegexRule> regexRules) {
+        this.literals = AhoCorasick.build(patterns);
+        this.replacements = replacements.toArray(new String[0]);
+        this.regexRules = List.copyOf(regexRules);
+    }
+
+    /**
+     * Актуальные правила: из внешнего файла, если он есть и разбирается без ошибок, иначе встроенные.
+     * Внешний файл перечитывается, только если изменилась дата его модификации.
+     */
+    public static synchronized NormalizationRules current() {
+        if (OVERRIDE_FILE.isFile()) {
+            long modified = OVERRIDE_FILE.lastModified();
+            if (modified != overrideModified) {
+                overrideModified = modified;
+                try {
+                    override = parse(Files.readAllLines(OVERRIDE_FILE.toPath(), StandardCharsets.UTF_8));
+                    logger.info("Загружены правила нормализации из " + OVERRIDE_FILE.getAbsolutePath());
+                } catch (IOException | IllegalArgumentException e) {
+                    // Оставляем последние корректные правила, пока файл не исправят
+                    logger.log(Level.WARNING, "Не удалось загрузить правила нормализации из "
+                            + OVERRIDE_FILE.getAbsolutePath(), e);
+                }
+            }
+            if (override != null) {
+                return override;
+            }
+        } else {
+            override = null;
+            overrideModified = Long.MIN_VALUE;
+        }
+        return builtIn();
+    }
+
+    // Папка с jar программы; если ее не определить (например, в образе jlink), то рабочая папка
+    private static File applicationDirectory() {
+        try {
+            CodeSource source = NormalizationRules.class.getProtectionDomain().getCodeSource();
+            if (source != null && "file".equals(source.getLocation().getProtocol())) {
+                File location = new File(source.getLocation().toURI());
+                return location.isFile() ? location.getParentFile() : location;
+            }
+        } catch (URISyntaxException | SecurityException e) {
+            logger.log(Level.WARNING, "Не удалось определить папку программы", e);
+        }
+        return new File(System.getProperty("user.dir"));
+    }
+
+    private static NormalizationRules builtIn() {
+        if (builtIn == null) {
+            try (InputStream in = Objects.requireNonNull(NormalizationRules.class.getResourceAsStream(RESOURCE));
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                builtIn = parse(reader.lines().toList());
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось загрузить " + RESOURCE, e);
+            }
+        }
+        return builtIn;
+    }
+
+    /**
+     * Разбор списка правил: "образец => замена" или "regex: выражение => замена",
+     * пустые строки и строки с # пропускаются.
+     *
+     * @throws IllegalArgumentException если строка не является правилом
+     */
+    public static NormalizationRules parse(List<String> lines) {
+        List<String> patterns = new ArrayList<>();
+        List<String> replacements = new ArrayList<>();
+        List<RegexRule> regexRules = new ArrayList<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Строка " + (i + 1) + ": нет \"" + SEPARATOR + "\": " + line);
+            }
+            String pattern = line.substring(0, separator).strip();
+            String replacement = line.substring(separator + SEPARATOR.length()).strip();
+
+            if (pattern.startsWith(REGEX_PREFIX)) {
+                String regex = pattern.substring(REGEX_PREFIX.length()).strip();
+                try {
+                    regexRules.add(new RegexRule(Pattern.compile(regex), replacement));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Строка " + (i + 1) + ": " + e.getDescription() + ": " + regex, e);
+                }
+            } else if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Строка " + (i + 1) + ": пустой образец");
+            } else {
+                patterns.add(pattern);
+                replacements.add(replacement);
+            }
+        }
+        return new NormalizationRules(patterns, replacements, regexRules);
+    }
+
+    public AhoCorasick literals() {
+        return literals;
+    }
+
+    // Замена для текстового правила с номером из автомата
+    public String replacement(int pattern) {
+        return replacements[pattern];
+    }
+
+    public List<RegexRule> regexRules() {
+        return regexRules;
+    }
+}
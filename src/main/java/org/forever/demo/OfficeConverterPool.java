@@ -0,0 +1,198 @@
+package org.forever.demo;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Конвертация через LibreOffice с пулом из нескольких мест (слотов).
+ * <p>
+ * Каждая конвертация - отдельный процесс soffice --convert-to: постоянно запущенный офис, принимающий
+ * задания через сокет, требует библиотек UNO, которых в зависимостях программы нет. Зато больше всего
+ * времени при холодном запуске soffice уходит на создание профиля пользователя, поэтому у каждого слота
+ * свой постоянный профиль (-env:UserInstallation): он создается один раз, и следующие конвертации в этом
+ * слоте запускаются уже с готовым профилем. Отдельные профили позволяют конвертировать несколько файлов
+ * одновременно (два soffice с одним профилем мешают друг другу), так что пакетная сверка с десятками
+ * файлов BIFF5 конвертирует их параллельно.
+ * <p>
+ * Каждая конвертация ограничена по времени: зависший процесс завершается, а профиль слота удаляется.
+ * Если в слоте конвертация не удалась несколько раз подряд, его профиль тоже удаляется и soffice
+ * проверяется запуском --version; пока проверка не проходит, конвертации в этом слоте сразу завершаются ошибкой.
+ */
+public class OfficeConverterPool implements DocumentConverter {
+    private static final Logger logger = Logger.getLogger(OfficeConverterPool.class.getName());
+
+    private static final List<String> SOFFICE_CANDIDATES = List.of(
+            "/usr/lib/libreoffice/program/soffice",
+            "/usr/lib64/libreoffice/program/soffice",
+            "/opt/libreoffice/program/soffice",
+            "/usr/bin/soffice",
+            "/Applications/LibreOffice.app/Contents/MacOS/soffice");
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration HEALTH_CHECK_TIMEOUT = Duration.ofSeconds(30);
+    private static final int FAILURES_BEFORE_CHECK = 2;
+
+    private static OfficeConverterPool shared;
+
+    // Место для одной конвертации: свой профиль LibreOffice, счетчик неудач подряд и результат проверки soffice
+    private static final class Slot {
+        final int id;
+        final Path profile;
+        int failures;
+        boolean broken;
+
+        Slot(int id, Path profile) {
+            this.id = id;
+            this.profile = profile;
+        }
+    }
+
+    private final Path soffice;
+    private final Duration timeout;
+    private final BlockingQueue<Slot> idle;
+
+    /**
+     * @param soffice      Путь к soffice
+     * @param slots        Сколько конвертаций может идти одновременно
+     * @param timeout      Ограничение времени одной конвертации
+     * @param profilesRoot Папка для профилей слотов
+     */
+    public OfficeConverterPool(Path soffice, int slots, Duration timeout, Path profilesRoot) {
+        this.soffice = soffice;
+        this.timeout = timeout;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, slots));
+        for (int i = 0; i < Math.max(1, slots); i++) {
+            idle.add(new Slot(i, profilesRoot.resolve("slot-" + i)));
+        }
+    }
+
+    /**
+     * Общий пул программы: найденный soffice, слотов - половина ядер (от 1 до 4),
+     * профили - рядом с кэшем конвертаций.
+     */
+    public static synchronized OfficeConverterPool shared() throws IOException {
+        if (shared == null) {
+            int slots = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+            Path profiles = ConversionCache.directory().resolveSibling("office-profiles");
+            shared = new OfficeConverterPool(findSoffice(), slots, DEFAULT_TIMEOUT, profiles);
+        }
+        return shared;
+    }
+
+    private static Path findSoffice() {
+        for (String candidate : SOFFICE_CANDIDATES) {
+            Path path = Paths.get(candidate);
+            if (Files.isExecutable(path)) {
+                return path;
+            }
+        }
+        return Paths.get(SOFFICE_CANDIDATES.getFirst()); // Ошибка будет при запуске, с понятным путем
+    }
+
+    @Override
+    public File convertToXlsx(File source, File outputDir) throws Exception {
+        Slot slot = idle.take();
+        try {
+            // Неисправный слот не получает файл, пока soffice снова не пройдет проверку
+            if (slot.broken) {
+                slot.broken = !isHealthy();
+                if (slot.broken) {
+                    throw new IOException("LibreOffice не отвечает (" + soffice + "), файл не конвертирован: " + source.getName());
+                }
+                logger.info("LibreOffice снова отвечает, слот " + slot.id + " работает");
+            }
+            File result = convert(slot, source, outputDir);
+            slot.failures = 0;
+            return result;
+        } catch (Exception e) {
+            if (!slot.broken && ++slot.failures >= FAILURES_BEFORE_CHECK) {
+                // Несколько неудач подряд: профиль мог испортиться - создадим заново и проверим сам soffice
+                resetProfile(slot);
+                slot.failures = 0;
+                slot.broken = !isHealthy();
+                if (slot.broken) {
+                    logger.warning("LibreOffice не отвечает: " + soffice);
+                }
+            }
+            throw e;
+        } finally {
+            idle.add(slot);
+        }
+    }
+
+    private File convert(Slot slot, File source, File outputDir) throws Exception {
+        boolean firstRun = !Files.isDirectory(slot.profile);
+        ProcessBuilder pb = new ProcessBuilder(
+                soffice.toString(),
+                "-env:UserInstallation=" + slot.profile.toUri(),
+                "--headless",
+                "--norestore",
+                "--nologo",
+                "--nodefault",
+                "--convert-to", "xlsx",
+                "--outdir", outputDir.getAbsolutePath(),
+                source.getAbsolutePath());
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        long start = System.nanoTime();
+        Process process = pb.start();
+        if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+            // Профиль прерванного процесса может остаться заблокированным - создадим заново
+            resetProfile(slot);
+            throw new TimeoutException("LibreOffice не закончил конвертацию за " + timeout.toSeconds() + " с: " + source.getName());
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException("LibreOffice завершился с кодом " + process.exitValue() + ": " + source.getName());
+        }
+
+        File result = new File(outputDir, FilenameUtils.getBaseName(source.getName()) + ".xlsx");
+        if (!result.isFile()) {
+            throw new IOException("LibreOffice не создал файл " + result.getName());
+        }
+        logger.info("Конвертация в слоте " + slot.id + (firstRun ? " (новый профиль)" : "") + ": "
+                + source.getName() + " - " + (System.nanoTime() - start) / 1_000_000 + " мс");
+        return result;
+    }
+
+    /**
+     * Проверка, что soffice запускается и отвечает (soffice --version).
+     */
+    public boolean isHealthy() {
+        try {
+            Process process = new ProcessBuilder(soffice.toString(), "--version")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(HEALTH_CHECK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void resetProfile(Slot slot) {
+        if (Files.exists(slot.profile)) {
+            CacheDirectories.deleteRecursively(slot.profile);
+        }
+    }
+}
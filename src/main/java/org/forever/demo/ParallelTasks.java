@@ -0,0 +1,52 @@
+package org.forever.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Параллельная обработка файлов сравнения: каждая задача выполняется на своем виртуальном потоке,
+ * а результаты возвращаются в порядке входных элементов, чтобы итог не зависел от того,
+ * какой файл обработается быстрее.
+ */
+public class ParallelTasks {
+
+    public static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> task) {
+        if (items.size() < 2) {
+            // Для одного файла поток не нужен
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<? extends R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(executor.submit(() -> task.apply(item)));
+            }
+
+            List<R> results = new ArrayList<>(items.size());
+            for (Future<? extends R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обработка файлов прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.forever.demo;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Кэш результатов разбора актов: повторное сравнение того же файла (например, акта контрагента
+ * с несколькими версиями нашей выгрузки) не открывает книгу вообще.
+ * <p>
+ * Ключ - SHA-256 содержимого файла и версия парсеров, поэтому переименованный или скопированный файл
+ * тоже попадает в кэш, а измененный - нет. В памяти хранятся последние использованные записи,
+ * пока их общий примерный размер не превышает лимит. Если задана папка (только по явному запросу -
+ * см. sharedOnDisk), записи дополнительно сохраняются на диск в компактном двоичном виде и переживают
+ * перезапуск программы; записи на диске вытесняются по возрасту и общему размеру, как в ConversionCache.
+ * <p>
+ * Кэшируются только распознанные акты: файлы, требующие специального парсинга (накладные),
+ * и файлы с ошибками каждый раз читаются заново.
+ */
+public class ParseCache {
+    private static final Logger logger = Logger.getLogger(ParseCache.class.getName());
+
+    // Увеличивать при любом изменении парсеров, влияющем на результат: старые записи перестанут находиться
+    // 2 - BIFF5 читается напрямую (Biff5StreamingReader), а не через конвертацию в XLSX
+    public static final int PARSER_VERSION = 2;
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 256L * 1024 * 1024;
+    private static final long MAX_DISK_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private static final String EXTENSION = ".bin";
+    private static final int FILE_MAGIC = 0x41435443; // "ACTC"
+
+    private static ParseCache shared;
+    private static ParseCache sharedOnDisk;
+
+    /**
+     * Разобранный акт.
+     *
+     * @param table            Строки акта
+     * @param counterpartyName Контрагент из файла или null
+     * @param skippedRows      Пропущенные при разборе строки: причина -> количество
+     */
+    public record Entry(ActTable table, String counterpartyName, Map<String, Integer> skippedRows) {
+
+        // Примерный объем в памяти: строки ячеек, суммы и служебные массивы
+        long estimatedBytes() {
+            long bytes = 256;
+            for (int row = 0; row < table.rowCount(); row++) {
+                bytes += 16;
+                for (int cell = 0; cell < table.cellCount(row); cell++) {
+                    bytes += 48 + 2L * table.text(row, cell).length();
+                }
+            }
+            return bytes + 64L * table.groupCount();
+        }
+    }
+
+    private final long maxBytes;
+    private final File directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> sizes = new LinkedHashMap<>();
+    private long totalBytes;
+
+    /**
+     * @param maxBytes  Лимит примерного объема записей в памяти
+     * @param directory Папка для записей на диске или null, чтобы хранить только в памяти
+     */
+    public ParseCache(long maxBytes, File directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+    }
+
+    // Общий кэш программы: 64 МБ только в памяти
+    public static synchronized ParseCache shared() {
+        if (shared == null) {
+            shared = new ParseCache(DEFAULT_MAX_BYTES, null);
+        }
+        return shared;
+    }
+
+    /**
+     * Общий кэш с сохранением на диск: 64 МБ в памяти и папка parse в личной папке кэшей пользователя
+     * (CacheDirectories.root()), доступная только ему. Если папку создать нельзя, кэш работает только в памяти.
+     */
+    public static synchronized ParseCache sharedOnDisk() {
+        if (sharedOnDisk == null) {
+            File directory = null;
+            try {
+                directory = CacheDirectories.directory("parse").toFile();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Не удалось создать папку кэша разбора, кэш будет только в памяти", e);
+            }
+            sharedOnDisk = new ParseCache(DEFAULT_MAX_BYTES, directory);
+        }
+        return sharedOnDisk;
+    }
+
+    /**
+     * Ключ кэша для файла: SHA-256 содержимого и версия парсеров.
+     */
+    public static String key(File file) throws IOException {
+        return ContentHash.sha256(file) + "-v" + PARSER_VERSION;
+    }
+
+    /**
+     * @return запись из памяти или с диска, null если ее нет
+     */
+    public Entry get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Entry entry = readFromDisk(key);
+        if (entry != null) {
+            putInMemory(key, entry);
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) {
+        putInMemory(key, entry);
+        writeToDisk(key, entry);
+    }
+
+    private synchronized void putInMemory(String key, Entry entry) {
+        long bytes = entry.estimatedBytes();
+        if (bytes > maxBytes) {
+            return; // Одна запись больше всего кэша - не вытесняем ради нее остальные
+        }
+        Long previous = sizes.put(key, bytes);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        entries.put(key, entry);
+        totalBytes += bytes;
+
+        // Вытесняем давно не использованные записи, пока не уложимся в лимит
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            String eldestKey = eldest.next().getKey();
+            eldest.remove();
+            totalBytes -= sizes.remove(eldestKey);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sizes.clear();
+        totalBytes = 0;
+    }
+
+    private File diskFile(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    private Entry readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        File file = diskFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != PARSER_VERSION) {
+                return null;
+            }
+            String counterpartyName = in.readBoolean() ? in.readUTF() : null;
+            int causes = in.readInt();
+            Map<String, Integer> skippedRows = new LinkedHashMap<>();
+            for (int i = 0; i < causes; i++) {
+                skippedRows.put(in.readUTF(), in.readInt());
+            }
+            Entry entry = new Entry(ActTable.read(in), counterpartyName, skippedRows);
+            CacheDirectories.touch(file.toPath());
+            return entry;
+        } catch (IOException e) {
+            // Поврежденная запись просто не используется, файл будет разобран заново и запись перезапишется
+            logger.log(Level.WARNING, "Не удалось прочитать кэш разбора: " + file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (directory == null) {
+            return;
+        }
+        File file = diskFile(key);
+        try {
+            Files.createDirectories(directory.toPath());
+            // Пишем во временный файл и переименовываем, чтобы параллельное чтение не увидело половину записи
+            File temp = File.createTempFile(key, ".tmp", directory);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(FILE_MAGIC);
+                    out.writeInt(PARSER_VERSION);
+                    out.writeBoolean(entry.counterpartyName() != null);
+                    if (entry.counterpartyName() != null) {
+                        out.writeUTF(entry.counterpartyName());
+                    }
+                    out.writeInt(entry.skippedRows().size());
+                    for (Map.Entry<String, Integer> cause : entry.skippedRows().entrySet()) {
+                        out.writeUTF(cause.getKey());
+                        out.writeInt(cause.getValue());
+                    }
+                    entry.table().write(out);
+                }
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Не удалось сохранить кэш разбора: " + file.getAbsolutePath(), e);
+        }
+        CacheDirectories.evict(directory.toPath(), EXTENSION, MAX_DISK_BYTES, MAX_DISK_AGE_MILLIS);
+    }
+}
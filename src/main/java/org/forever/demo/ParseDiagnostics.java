@@ -0,0 +1,159 @@
+package org.forever.demo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Замечания при разборе файлов за одно сравнение: что не удалось прочитать (файл, лист, строка, ячейка, причина)
+ * и сколько строк пропущено по каждой причине.
+ * Парсеры только записывают сюда, а показывает итог один раз в конце окно программы или командная строка -
+ * без окна на каждую ошибку и без вывода в консоль из циклов разбора.
+ * <p>
+ * Можно заполнять из нескольких потоков. Хранится не больше MAX_PROBLEMS замечаний, остальные только считаются.
+ */
+public class ParseDiagnostics {
+
+    private static final int MAX_PROBLEMS = 200;
+
+    /**
+     * Одно замечание.
+     *
+     * @param file  Имя файла или null, если замечание не относится к одному файлу
+     * @param sheet Имя листа или null
+     * @param row   Номер строки с 0 или -1
+     * @param cell  Номер колонки с 0 или -1
+     * @param cause Что случилось
+     * @param error Исключение или null
+     */
+    public record Problem(String file, String sheet, int row, int cell, String cause, Exception error) {
+
+        public String location() {
+            StringBuilder sb = new StringBuilder(file != null ? file : "-");
+            if (sheet != null) {
+                sb.append(", лист \"").append(sheet).append('"');
+            }
+            if (row >= 0) {
+                sb.append(", строка ").append(row + 1);
+            }
+            if (cell >= 0) {
+                sb.append(", колонка ").append(columnName(cell));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final List<Problem> problems = new ArrayList<>();
+    private int problemCount;
+    // Файл -> причина -> количество пропущенных строк
+    private final Map<String, Map<String, Integer>> skippedRows = new LinkedHashMap<>();
+
+    public void problem(String file, String sheet, int row, int cell, String cause) {
+        add(new Problem(file, sheet, row, cell, cause, null));
+    }
+
+    // Файл целиком не прочитан
+    public void fileError(String file, String cause, Exception error) {
+        add(new Problem(file, null, -1, -1, cause, error));
+    }
+
+    public synchronized void add(Problem problem) {
+        problemCount++;
+        if (problems.size() < MAX_PROBLEMS) {
+            problems.add(problem);
+        }
+    }
+
+    // Строка листа не попала в данные сравнения
+    public void skippedRow(String file, String cause) {
+        skippedRows(file, cause, 1);
+    }
+
+    public synchronized void skippedRows(String file, String cause, int count) {
+        skippedRows.computeIfAbsent(file, _ -> new LinkedHashMap<>()).merge(cause, count, Integer::sum);
+    }
+
+    // Пропущенные строки одного файла: причина -> количество
+    public synchronized Map<String, Integer> getSkippedRows(String file) {
+        return Map.copyOf(skippedRows.getOrDefault(file, Map.of()));
+    }
+
+    // Переносит замечания другого сборщика (например, накопленные при потоковом чтении файла)
+    public void addAll(ParseDiagnostics other) {
+        List<Problem> otherProblems;
+        int otherCount;
+        Map<String, Map<String, Integer>> otherSkipped = new LinkedHashMap<>();
+        synchronized (other) {
+            otherProblems = List.copyOf(other.problems);
+            otherCount = other.problemCount;
+            other.skippedRows.forEach((file, causes) -> otherSkipped.put(file, new LinkedHashMap<>(causes)));
+        }
+        synchronized (this) {
+            for (Problem problem : otherProblems) {
+                add(problem);
+            }
+            // Замечания сверх лимита у другого сборщика только посчитаны
+            problemCount += otherCount - otherProblems.size();
+            otherSkipped.forEach((file, causes) -> causes.forEach((cause, count) ->
+                    skippedRows.computeIfAbsent(file, _ -> new LinkedHashMap<>()).merge(cause, count, Integer::sum)));
+        }
+    }
+
+    public synchronized List<Problem> getProblems() {
+        return List.copyOf(problems);
+    }
+
+    public synchronized int getProblemCount() {
+        return problemCount;
+    }
+
+    public synchronized Map<String, Map<String, Integer>> getSkippedRows() {
+        Map<String, Map<String, Integer>> copy = new LinkedHashMap<>();
+        skippedRows.forEach((file, causes) -> copy.put(file, Map.copyOf(causes)));
+        return copy;
+    }
+
+    public synchronized int getSkippedRowCount() {
+        return skippedRows.values().stream().flatMap(causes -> causes.values().stream()).mapToInt(Integer::intValue).sum();
+    }
+
+    public synchronized boolean hasProblems() {
+        return problemCount > 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return problemCount == 0 && skippedRows.isEmpty();
+    }
+
+    // Одна строка для лога и отчетов
+    public synchronized String summary() {
+        return "Замечаний при разборе: " + problemCount + "; пропущено строк: " + getSkippedRowCount();
+    }
+
+    // Полный текст для показа пользователю
+    public synchronized String render() {
+        StringBuilder sb = new StringBuilder(summary());
+        for (Problem problem : problems) {
+            sb.append('\n').append(problem.location()).append(": ").append(problem.cause());
+            if (problem.error() != null && problem.error().getMessage() != null) {
+                sb.append(" (").append(problem.error().getMessage()).append(')');
+            }
+        }
+        if (problemCount > problems.size()) {
+            sb.append("\n... и еще ").append(problemCount - problems.size());
+        }
+        skippedRows.forEach((file, causes) -> causes.forEach((cause, count) ->
+                sb.append('\n').append(file).append(": пропущено строк (").append(cause).append(") - ").append(count)));
+        return sb.toString();
+    }
+
+    // Буквенное имя колонки, как в Excel: 0 -> A, 26 -> AA
+    private static String columnName(int column) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+            sb.insert(0, (char) ('A' + (c - 1) % 26));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package org.forever.demo;
+
+/**
+ * Способ чтения книг при парсинге актов.
+ */
+public enum ParserEngine {
+    // Потоковое чтение для больших XLSX и XLS, полная загрузка книги для остальных
+    AUTO,
+    // Всегда полная загрузка книги (WorkbookFactory)
+    DOM,
+    // Потоковое чтение везде, где формат это поддерживает
+    STREAMING;
+
+    // Размер файла, начиная с которого в режиме AUTO включается потоковое чтение
+    public static final long AUTO_STREAMING_THRESHOLD = 5L * 1024 * 1024;
+
+    public boolean useStreaming(long fileSize) {
+        return this == STREAMING || (this == AUTO && fileSize >= AUTO_STREAMING_THRESHOLD);
+    }
+}
@@ -0,0 +1,194 @@
+package org.forever.demo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Индекс нормализованных наименований товаров второго файла для нечеткого сопоставления.
+ * Вместо расчета расстояния Левенштейна до каждого наименования отбираются кандидаты
+ * по общим биграммам (парам соседних символов): одна правка портит не больше двух биграмм,
+ * поэтому у строк на расстоянии не больше k общих биграмм не меньше max(|a|, |b|) - 1 - 2k,
+ * а длины отличаются не больше чем на k. Остальные наименования заведомо дальше k и не проверяются.
+ * <p>
+ * Биграмма кодируется двумя символами в одном int; и индекс, и запрос работают с отсортированными
+ * массивами таких int, поэтому поиск кандидатов не создает объектов на каждую биграмму.
+ */
+public final class ProductNameIndex {
+
+    private final String[] names;
+    // Биграммы по возрастанию и для каждой - пары (номер наименования, сколько раз биграмма в нем встречается)
+    private final int[] postingKeys;
+    private final int[][] postings;
+    // Номера наименований по длине - для коротких строк, где фильтр по биграммам ничего не отсекает
+    private final int[][] namesByLength;
+
+    // Счетчики общих биграмм для текущего запроса и номера наименований, где они ненулевые
+    private final int[] shared;
+    private final int[] touched;
+
+    private ProductNameIndex(String[] names, int[] postingKeys, int[][] postings, int[][] namesByLength) {
+        this.names = names;
+        this.postingKeys = postingKeys;
+        this.postings = postings;
+        this.namesByLength = namesByLength;
+        this.shared = new int[names.length];
+        this.touched = new int[names.length];
+    }
+
+    /**
+     * @param normalizedNames Нормализованные наименования; номер кандидата - позиция в этом списке
+     */
+    public static ProductNameIndex build(List<String> normalizedNames) {
+        String[] names = normalizedNames.toArray(new String[0]);
+
+        // Все вхождения (биграмма в старших 32 битах, номер наименования в младших); после сортировки
+        // вхождения одной биграммы идут подряд, а внутри них - повторы в одном наименовании
+        int maxLength = 0;
+        int total = 0;
+        for (String name : names) {
+            maxLength = Math.max(maxLength, name.length());
+            total += Math.max(0, name.length() - 1);
+        }
+        long[] occurrences = new long[total];
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j + 1 < names[i].length(); j++) {
+                occurrences[n++] = ((long) bigram(names[i], j) << 32) | i;
+            }
+        }
+        Arrays.sort(occurrences);
+
+        int keyCount = 0;
+        for (int i = 0; i < total; i++) {
+            if (i == 0 || (int) (occurrences[i] >>> 32) != (int) (occurrences[i - 1] >>> 32)) {
+                keyCount++;
+            }
+        }
+        int[] postingKeys = new int[keyCount];
+        int[][] postings = new int[keyCount][];
+        int key = 0;
+        for (int start = 0; start < total; key++) {
+            int bigram = (int) (occurrences[start] >>> 32);
+            int end = start;
+            int distinct = 0;
+            while (end < total && (int) (occurrences[end] >>> 32) == bigram) {
+                if (end == start || occurrences[end] != occurrences[end - 1]) {
+                    distinct++;
+                }
+                end++;
+            }
+            int[] packed = new int[distinct * 2];
+            int p = -2;
+            for (int i = start; i < end; i++) {
+                if (i == start || occurrences[i] != occurrences[i - 1]) {
+                    p += 2;
+                    packed[p] = (int) occurrences[i];
+                }
+                packed[p + 1]++;
+            }
+            postingKeys[key] = bigram;
+            postings[key] = packed;
+            start = end;
+        }
+
+        int[] lengthCounts = new int[maxLength + 1];
+        for (String name : names) {
+            lengthCounts[name.length()]++;
+        }
+        int[][] namesByLength = new int[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            namesByLength[length] = new int[lengthCounts[length]];
+            lengthCounts[length] = 0;
+        }
+        for (int i = 0; i < names.length; i++) {
+            int length = names[i].length();
+            namesByLength[length][lengthCounts[length]++] = i;
+        }
+
+        return new ProductNameIndex(names, postingKeys, postings, namesByLength);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int position) {
+        return names[position];
+    }
+
+    /**
+     * Наименования, которые могут оказаться на расстоянии не больше maxDistance от query.
+     * Фильтр не теряет подходящих наименований, но может вернуть лишние - расстояние
+     * до кандидатов все равно нужно проверить.
+     *
+     * @return номера кандидатов по возрастанию
+     */
+    public int[] candidates(String query, int maxDistance) {
+        int length = query.length();
+        int minLength = Math.max(0, length - maxDistance);
+        int maxLength = Math.min(namesByLength.length - 1, length + maxDistance);
+
+        int[] result;
+        int count = 0;
+        if (length - 1 - 2 * maxDistance <= 0) {
+            // Строка слишком коротка для фильтра по биграммам: берем всех подходящих по длине
+            int total = 0;
+            for (int l = minLength; l <= maxLength; l++) {
+                total += namesByLength[l].length;
+            }
+            result = new int[total];
+            for (int l = minLength; l <= maxLength; l++) {
+                for (int position : namesByLength[l]) {
+                    result[count++] = position;
+                }
+            }
+        } else {
+            // Биграммы запроса по возрастанию: одинаковые идут подряд, их число - длина серии
+            int[] bigrams = new int[length - 1];
+            for (int i = 0; i + 1 < length; i++) {
+                bigrams[i] = bigram(query, i);
+            }
+            Arrays.sort(bigrams);
+
+            int touchedCount = 0;
+            for (int start = 0, end; start < bigrams.length; start = end) {
+                end = start + 1;
+                while (end < bigrams.length && bigrams[end] == bigrams[start]) {
+                    end++;
+                }
+                int key = Arrays.binarySearch(postingKeys, bigrams[start]);
+                if (key < 0) {
+                    continue;
+                }
+                int[] list = postings[key];
+                for (int i = 0; i < list.length; i += 2) {
+                    int position = list[i];
+                    if (shared[position] == 0) {
+                        touched[touchedCount++] = position;
+                    }
+                    shared[position] += Math.min(end - start, list[i + 1]);
+                }
+            }
+
+            result = new int[touchedCount];
+            for (int i = 0; i < touchedCount; i++) {
+                int position = touched[i];
+                int nameLength = names[position].length();
+                int required = Math.max(length, nameLength) - 1 - 2 * maxDistance;
+                if (Math.abs(nameLength - length) <= maxDistance && shared[position] >= required) {
+                    result[count++] = position;
+                }
+                shared[position] = 0;
+            }
+        }
+
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    // Биграмма, начинающаяся с символа index
+    private static int bigram(String str, int index) {
+        return (str.charAt(index) << 16) | str.charAt(index + 1);
+    }
+}
@@ -0,0 +1,98 @@
+package org.forever.demo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Нормализация наименований товаров для сопоставления накладных.
+ * Строка проходится один раз: символы приводятся к нижнему регистру, лишние знаки и пробелы
+ * отбрасываются, а текстовые замены из {@link NormalizationRules} применяются, как только
+ * автомат Ахо-Корасик нашел образец в конце результата. Затем применяются правила
+ * с регулярными выражениями. Результат собирается в StringBuilder, который переиспользуется потоком.
+ * <p>
+ * Экземпляр создается на одно сравнение: правила фиксируются на все сравнение,
+ * а уже нормализованные наименования запоминаются (одно и то же наименование встречается
+ * и при разборе, и при сопоставлении).
+ */
+public final class ProductNameNormalizer {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private final NormalizationRules rules = NormalizationRules.current();
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    // Нормализация с запоминанием результата; безопасна для параллельного разбора файлов
+    public String normalize(String name) {
+        if (name == null) return "";
+        return cache.computeIfAbsent(name, n -> normalize(n, rules));
+    }
+
+    public static String normalizeUncached(String str) {
+        return normalize(str, NormalizationRules.current());
+    }
+
+    private static String normalize(String str, NormalizationRules rules) {
+        if (str == null) return "";
+
+        AhoCorasick literals = rules.literals();
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        // После замены автомат начинает заново, чтобы образец не искался в собственном результате замены
+        int state = AhoCorasick.ROOT;
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = Character.toLowerCase(str.charAt(i));
+            if (c == '_') {
+                c = ' ';
+            }
+            // Удаление запятых, точек и кавычек
+            if (c == ',' || c == '.' || c == '"') {
+                continue;
+            }
+            // Нормализация пробелов: подряд идущие пробельные символы - один пробел, по краям - ничего
+            if (isWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (c <= ' ' && out.isEmpty()) {
+                continue; // как String.trim для начала строки
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                state = literals.next(state, ' ');
+                pendingSpace = false;
+            }
+            out.append(c);
+            state = literals.next(state, c);
+
+            int pattern = literals.match(state);
+            if (pattern >= 0) {
+                out.setLength(out.length() - literals.patternLength(pattern));
+                out.append(rules.replacement(pattern));
+                state = AhoCorasick.ROOT;
+            }
+        }
+
+        trimEnd(out);
+        String result = out.toString();
+        for (NormalizationRules.RegexRule rule : rules.regexRules()) {
+            result = rule.pattern().matcher(result).replaceAll(rule.replacement());
+        }
+        return result;
+    }
+
+    // Пробельные символы в смысле \s регулярных выражений
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Как String.trim для конца строки (начало уже без пробелов)
+    private static void trimEnd(StringBuilder out) {
+        int length = out.length();
+        while (length > 0 && out.charAt(length - 1) <= ' ') {
+            length--;
+        }
+        out.setLength(length);
+    }
+}
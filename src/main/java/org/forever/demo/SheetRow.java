@@ -0,0 +1,50 @@
+package org.forever.demo;
+
+import java.util.List;
+
+/**
+ * Одна строка листа для потоковых парсеров.
+ * Содержит все физически присутствующие ячейки (в том числе пустые) по возрастанию колонок,
+ * значения уже приведены к виду ExcelComparator.getCellValueAsString.
+ *
+ * @param rowNum Номер строки, начиная с 0 (как Row.getRowNum())
+ * @param cells  Ячейки строки
+ */
+public record SheetRow(int rowNum, List<Cell> cells) {
+
+    /**
+     * @param column Номер колонки, начиная с 0
+     * @param value  Значение ячейки без пробелов по краям
+     */
+    public record Cell(int column, String value) {
+    }
+
+    // Значение ячейки в колонке или "", если такой ячейки нет (как getCellValueAsString(row.getCell(column)))
+    public String valueAt(int column) {
+        for (Cell cell : cells) {
+            if (cell.column() == column) {
+                return cell.value();
+            }
+        }
+        return "";
+    }
+
+    // true, если ячейка в колонке физически присутствует (как row.getCell(column) != null)
+    public boolean hasCell(int column) {
+        for (Cell cell : cells) {
+            if (cell.column() == column) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        for (Cell cell : cells) {
+            if (!cell.value().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package org.forever.demo;
+
+/**
+ * Получатель строк первого листа от потоковых читателей книг.
+ */
+@FunctionalInterface
+public interface SheetRowSink {
+
+    /**
+     * Принимает очередную строку листа (строки приходят по возрастанию номера).
+     *
+     * @return false, если дальнейшие строки не нужны и чтение можно прервать
+     */
+    boolean acceptRow(SheetRow row);
+}
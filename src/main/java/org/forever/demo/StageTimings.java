@@ -0,0 +1,51 @@
+package org.forever.demo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Замеры времени по этапам одного сравнения.
+ * Этапы с одинаковым названием суммируются (например, открытие каждой из книг).
+ */
+public class StageTimings {
+    private final Map<String, Long> nanosByStage = new LinkedHashMap<>();
+    private int workbookOpens;
+
+    // Выполняет действие и добавляет затраченное время к этапу
+    public <T> T measure(String stage, Callable<T> action) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return action.call();
+        } finally {
+            add(stage, System.nanoTime() - start);
+        }
+    }
+
+    public synchronized void add(String stage, long nanos) {
+        nanosByStage.merge(stage, nanos, Long::sum);
+    }
+
+    // Каждое полное чтение книги средствами POI отмечается здесь
+    public synchronized void countWorkbookOpen() {
+        workbookOpens++;
+    }
+
+    public synchronized int getWorkbookOpens() {
+        return workbookOpens;
+    }
+
+    public synchronized Map<String, Long> getMillisByStage() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        nanosByStage.forEach((stage, nanos) -> millis.put(stage, nanos / 1_000_000));
+        return millis;
+    }
+
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder("Этапы сравнения:");
+        getMillisByStage().forEach((stage, millis) ->
+                sb.append(' ').append(stage).append(" - ").append(millis).append(" мс;"));
+        sb.append(" открытий книг: ").append(workbookOpens);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package org.forever.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Передача сводки сравнения из рабочего потока в UI по мере появления расхождений.
+ * Сравнение кладет строки по каждой дате в ограниченную очередь (если UI не успевает,
+ * сравнение ждет), а UI периодически забирает накопившиеся пачки и дописывает их разом.
+ */
+public class SummaryFeed implements DateMismatchListener {
+    // Сколько дат с расхождениями может ждать отрисовки
+    private static final int CAPACITY = 256;
+
+    private final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private volatile int publishedDates;
+    private volatile double progress;
+    private volatile boolean cancelled;
+
+    @Override
+    public void onDateMismatch(String dateKey, List<String> summaryLines, ComparisonResult.MismatchInfo mismatch) {
+        if (cancelled) {
+            throw new CancellationException("Сравнение отменено");
+        }
+        try {
+            // Ждем места в очереди, но не дольше, чем UI интересуется результатом
+            while (!queue.offer(summaryLines, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled) {
+                    throw new CancellationException("Сравнение отменено");
+                }
+            }
+            publishedDates++; // пишет только поток сравнения
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Сравнение прервано");
+        }
+    }
+
+    @Override
+    public void onProgress(double comparedFraction) {
+        progress = comparedFraction;
+    }
+
+    /**
+     * Забирает не больше maxDates накопившихся дат.
+     *
+     * @return строки сводки этих дат подряд (пустой список, если новых нет)
+     */
+    public List<String> drain(int maxDates) {
+        List<List<String>> batches = new ArrayList<>();
+        queue.drainTo(batches, maxDates);
+        List<String> lines = new ArrayList<>();
+        batches.forEach(lines::addAll);
+        return lines;
+    }
+
+    // Сколько дат с расхождениями уже найдено (включая еще не отрисованные)
+    public int getPublishedDates() {
+        return publishedDates;
+    }
+
+    public double getProgress() {
+        return progress;
+    }
+
+    // Результат больше не нужен (очистка или новое сравнение): сравнение прервется на следующей дате
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,186 @@
+package org.forever.demo;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое чтение первого листа XLS (BIFF8) через HSSFEventFactory.
+ * HSSFWorkbook не строится: записи листа разбираются по мере чтения,
+ * а значения ячеек форматируются так же, как в ExcelComparator.getCellValueAsString.
+ * Для старого BIFF5 выбрасывается OldExcelFormatException, как и при обычном открытии.
+ */
+public class XlsStreamingReader {
+
+    public static void read(File file, SheetRowSink sink) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+            SheetListener listener = new SheetListener(sink);
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(listener);
+            try {
+                new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+            } catch (HSSFUserException e) {
+                throw new IOException("Не удалось прочитать XLS: " + file.getName(), e);
+            }
+        }
+    }
+
+    private static final class SheetListener extends AbortableHSSFListener {
+        // Возвращается из abortableProcessRecord, чтобы прекратить чтение файла
+        private static final short STOP = 1;
+
+        private final SheetRowSink sink;
+        // Отслеживает FORMAT и XF записи, чтобы по ячейке получить строку формата
+        private final FormatTrackingHSSFListener formats = new FormatTrackingHSSFListener(record -> {
+        });
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+
+        private SSTRecord sharedStrings;
+        private boolean date1904;
+        // Глубина вложенности BOF/EOF: диаграммы внутри листа имеют собственные BOF и EOF
+        private int depth;
+        private boolean inFirstSheet;
+        // Формула со строковым результатом: значение придет следующей записью STRING
+        private FormulaRecord pendingFormula;
+
+        private int rowNum = -1;
+        private List<SheetRow.Cell> cells = new ArrayList<>();
+
+        SheetListener(SheetRowSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            formats.processRecord(record);
+
+            switch (record) {
+                case BOFRecord bof -> {
+                    if (depth == 0 && bof.getType() == BOFRecord.TYPE_WORKSHEET) {
+                        inFirstSheet = true;
+                    }
+                    depth++;
+                }
+                case EOFRecord _ -> {
+                    depth--;
+                    if (inFirstSheet && depth == 0) {
+                        // Первый лист прочитан, остальные не нужны
+                        flushRow();
+                        return STOP;
+                    }
+                }
+                case DateWindow1904Record window -> date1904 = window.getWindowing() == 1;
+                case SSTRecord sst -> sharedStrings = sst;
+                default -> {
+                    if (inFirstSheet && depth == 1) {
+                        return processSheetRecord(record) ? 0 : STOP;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        // Записи ячеек первого листа. false - получателю больше не нужны строки
+        private boolean processSheetRecord(Record record) {
+            if (pendingFormula != null) {
+                FormulaRecord formula = pendingFormula;
+                pendingFormula = null;
+                if (record instanceof StringRecord string) {
+                    return addCell(formula, string.getString().trim());
+                }
+                if (!addCell(formula, "")) {
+                    return false;
+                }
+            }
+
+            return switch (record) {
+                case LabelSSTRecord label ->
+                        addCell(label, sharedStrings.getString(label.getSSTIndex()).getString().trim());
+                case LabelRecord label -> addCell(label, label.getValue().trim());
+                case NumberRecord number -> addCell(number, numericValue(number));
+                case FormulaRecord formula -> switch (formula.getCachedResultTypeEnum()) {
+                    case NUMERIC -> addCell(formula, String.valueOf(formula.getValue()));
+                    case STRING -> {
+                        pendingFormula = formula;
+                        yield true;
+                    }
+                    // Для логических и ошибочных результатов getCellValueAsString возвращает ""
+                    default -> addCell(formula, "");
+                };
+                case BoolErrRecord boolErr ->
+                        addCell(boolErr, boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()) : "");
+                case BlankRecord blank -> addCell(blank, "");
+                case MulBlankRecord mulBlank -> {
+                    for (int i = 0; i < mulBlank.getNumColumns(); i++) {
+                        if (!addCell(mulBlank.getRow(), mulBlank.getFirstColumn() + i, "")) {
+                            yield false;
+                        }
+                    }
+                    yield true;
+                }
+                default -> true;
+            };
+        }
+
+        // Число или дата, как getCellValueAsString для NUMERIC
+        private String numericValue(NumberRecord number) {
+            double value = number.getValue();
+            if (DateUtil.isValidExcelDate(value)) {
+                String formatString = formats.getFormatString(number);
+                if (formatString != null && DateUtil.isADateFormat(formats.getFormatIndex(number), formatString)) {
+                    return dateFormat.format(DateUtil.getJavaDate(value, date1904));
+                }
+            }
+            return String.valueOf(value);
+        }
+
+        private boolean addCell(CellValueRecordInterface record, String value) {
+            return addCell(record.getRow(), record.getColumn(), value);
+        }
+
+        // Ячейки приходят по строкам; при переходе на новую строку предыдущая отдается получателю
+        private boolean addCell(int row, int column, String value) {
+            if (row != rowNum) {
+                if (!flushRow()) {
+                    return false;
+                }
+                rowNum = row;
+            }
+            cells.add(new SheetRow.Cell(column, value));
+            return true;
+        }
+
+        private boolean flushRow() {
+            if (cells.isEmpty()) {
+                return true;
+            }
+            SheetRow row = new SheetRow(rowNum, cells);
+            cells = new ArrayList<>();
+            return sink.acceptRow(row);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.forever.demo;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelNumberFormat;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Потоковое чтение первого листа XLSX через XSSFReader и SAX.
+ * Книга не строится в памяти: строки передаются получателю по одной,
+ * а значения ячеек форматируются так же, как в ExcelComparator.getCellValueAsString.
+ */
+public class XlsxStreamingReader {
+
+    public static void read(File file, SheetRowSink sink) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            SharedStrings sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            boolean date1904 = isDate1904(reader);
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheetData = sheets.next()) {
+                XMLReader xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(new SheetHandler(sharedStrings, styles, date1904, sink));
+                xmlReader.parse(new InputSource(sheetData));
+            } catch (StopReadingException e) {
+                // Получатель взял все, что ему нужно - остаток листа не читаем
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Не удалось прочитать XLSX: " + file.getName(), e);
+        }
+    }
+
+    // Флаг workbookPr/@date1904 из workbook.xml, как XSSFWorkbook.isDate1904()
+    private static boolean isDate1904(XSSFReader reader) throws IOException, OpenXML4JException,
+            SAXException, ParserConfigurationException {
+        boolean[] date1904 = {false};
+        try (InputStream workbookData = reader.getWorkbookData()) {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes)
+                        throws SAXException {
+                    if ("workbookPr".equals(localName)) {
+                        String value = attributes.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equals(value);
+                        throw new StopReadingException();
+                    }
+                    if ("sheets".equals(localName)) {
+                        throw new StopReadingException();
+                    }
+                }
+            });
+            xmlReader.parse(new InputSource(workbookData));
+        } catch (StopReadingException e) {
+            // workbookPr всегда идет до списка листов
+        }
+        return date1904[0];
+    }
+
+    // Прерывание разбора, когда дальнейшие строки не нужны
+    private static final class StopReadingException extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class SheetHandler extends DefaultHandler {
+        private final SharedStrings sharedStrings;
+        private final StylesTable styles;
+        private final boolean date1904;
+        private final SheetRowSink sink;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+        private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+
+        private int rowNum = -1;
+        private List<SheetRow.Cell> cells;
+        private int column;
+        private String cellType;
+        private int styleIndex;
+        private boolean hasFormula;
+        private boolean hasValue;
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder inlineText = new StringBuilder();
+        private boolean inValue;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+        private boolean inInlineText;
+
+        SheetHandler(SharedStrings sharedStrings, StylesTable styles, boolean date1904, SheetRowSink sink) {
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.date1904 = date1904;
+            this.sink = sink;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row" -> {
+                    String r = attributes.getValue("r");
+                    rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+                    cells = new ArrayList<>();
+                    column = -1;
+                }
+                case "c" -> {
+                    String r = attributes.getValue("r");
+                    column = r != null ? columnIndex(r) : column + 1;
+                    cellType = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    styleIndex = s != null ? Integer.parseInt(s) : 0;
+                    hasFormula = false;
+                    hasValue = false;
+                    value.setLength(0);
+                    inlineText.setLength(0);
+                }
+                case "v" -> {
+                    inValue = true;
+                    hasValue = true;
+                }
+                case "f" -> hasFormula = true;
+                case "is" -> inInlineString = true;
+                case "rPh" -> inPhonetic = true;
+                case "t" -> inInlineText = inInlineString && !inPhonetic;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            } else if (inInlineText) {
+                inlineText.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v" -> inValue = false;
+                case "t" -> inInlineText = false;
+                case "rPh" -> inPhonetic = false;
+                case "is" -> inInlineString = false;
+                case "c" -> cells.add(new SheetRow.Cell(column, cellValue()));
+                case "row" -> {
+                    if (!sink.acceptRow(new SheetRow(rowNum, cells))) {
+                        throw new StopReadingException();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        // Значение ячейки по тем же правилам, что и getCellValueAsString для XSSFCell
+        private String cellValue() {
+            String raw = value.toString();
+            boolean numericType = cellType == null || "n".equals(cellType);
+
+            if (hasFormula) {
+                // Для формул берется закешированный результат: число, иначе строка, иначе пусто
+                if (numericType) {
+                    try {
+                        return String.valueOf(raw.isEmpty() ? 0.0 : Double.parseDouble(raw));
+                    } catch (NumberFormatException e) {
+                        return "";
+                    }
+                }
+                return "str".equals(cellType) ? raw.trim() : "";
+            }
+
+            if (numericType) {
+                if (!hasValue) {
+                    return ""; // BLANK
+                }
+                double number;
+                try {
+                    number = raw.isEmpty() ? 0.0 : Double.parseDouble(raw);
+                } catch (NumberFormatException e) {
+                    return raw.trim();
+                }
+                if (isDateFormatted(number)) {
+                    return dateFormat.format(DateUtil.getJavaDate(number, date1904));
+                }
+                return String.valueOf(number);
+            }
+
+            return switch (cellType) {
+                case "s" -> sharedStrings.getItemAt(Integer.parseInt(raw.trim())).getString().trim();
+                case "inlineStr" -> inlineText.toString().trim();
+                case "b" -> hasValue && "1".equals(raw) ? "true" : "false";
+                case "e" -> "";
+                default -> raw.trim();
+            };
+        }
+
+        private boolean isDateFormatted(double number) {
+            if (!DateUtil.isValidExcelDate(number) || styles == null || styles.getNumCellStyles() == 0) {
+                return false;
+            }
+            return dateStyles.computeIfAbsent(styleIndex, index -> {
+                XSSFCellStyle style = styles.getStyleAt(index);
+                ExcelNumberFormat format = style != null ? ExcelNumberFormat.from(style) : null;
+                return format != null && DateUtil.isADateFormat(format);
+            });
+        }
+
+        // "AB12" -> 27
+        private static int columnIndex(String reference) {
+            int col = 0;
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                col = col * 26 + (c - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+}
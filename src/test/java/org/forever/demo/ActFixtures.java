@@ -0,0 +1,73 @@
+package org.forever.demo;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Небольшие акты из src/test/resources/acts и разбор их обоими движками.
+ * Для каждого парсера есть акт со своими заголовками:
+ * debit-credit (parseDebitCreditFile), prihod-rashod (parsePrihodRashodAsDebitCredit),
+ * prihod-rashod-balance (parsePrihodRashodFile), ais (parseAiS) - в форматах XLSX и XLS.
+ */
+final class ActFixtures {
+
+    private ActFixtures() {
+    }
+
+    static File fixture(String name) {
+        URL url = ActFixtures.class.getResource("/acts/" + name);
+        assertNotNull(url, "Нет тестового файла " + name);
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Обычный разбор: книга загружается целиком, кэш разбора выключен
+    static ActTable parseDom(File file) {
+        ComparisonSettings settings = new ComparisonSettings(false, false);
+        settings.setParserEngine(ParserEngine.DOM);
+        settings.setParseCache(null);
+        Map<String, ActTable> result = ExcelComparator.parseFiles(new File[]{file}, settings);
+        ActTable table = result.get(file.getName());
+        assertNotNull(table, "Нет результата разбора " + file.getName());
+        assertFalse(table.isEmpty(), "Пустой результат разбора " + file.getName());
+        return table;
+    }
+
+    // Потоковый разбор; без возврата к полной загрузке, иначе сравнение было бы DOM с DOM
+    static ActTable parseStreaming(File file) {
+        try (LoadedWorkbook loaded = LoadedWorkbook.load(file, new StageTimings(), ParserEngine.STREAMING)) {
+            ActRowParser parser = loaded.streamedAct();
+            assertNotNull(parser, "Потоковое чтение не удалось: " + file.getName());
+            assertTrue(parser.isRecognized(), "Акт не распознан при потоковом чтении: " + file.getName());
+            return parser.getFileData();
+        }
+    }
+
+    // Содержимое таблицы построчно в порядке групп: "ключ | ячейка | ячейка ..."
+    static List<String> rows(ActTable table) {
+        List<String> rows = new ArrayList<>();
+        for (ActTable.Group group : table.groups()) {
+            for (int row : group.rows()) {
+                StringBuilder line = new StringBuilder(group.key());
+                for (int cell = 0; cell < table.cellCount(row); cell++) {
+                    line.append(" | ").append(table.text(row, cell));
+                }
+                rows.add(line.toString());
+            }
+        }
+        return rows;
+    }
+
+    static void assertSameTable(ActTable expected, ActTable actual, String name) {
+        assertEquals(rows(expected), rows(actual), name);
+    }
+}
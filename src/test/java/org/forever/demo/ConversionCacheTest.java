@@ -0,0 +1,89 @@
+package org.forever.demo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Кэш конвертаций с подставным конвертером вместо офиса: конвертер копирует исходный файл.
+ */
+class ConversionCacheTest {
+
+    @TempDir
+    Path temp;
+
+    private final AtomicInteger conversions = new AtomicInteger();
+
+    @AfterEach
+    void restoreConverter() {
+        ExcelConverter.setConverter(null); // При следующем обращении будет выбран конвертер по умолчанию
+    }
+
+    @Test
+    void secondConversionIsTakenFromCache() throws Exception {
+        ExcelConverter.setConverter(this::copy);
+        Path cache = Files.createDirectories(temp.resolve("cache"));
+        File source = write("act.xls", "содержимое BIFF5");
+
+        File first = ConversionCache.convert(source, cache);
+        assertEquals(1, conversions.get());
+        assertEquals(cache, first.toPath().getParent());
+        assertEquals("содержимое BIFF5", Files.readString(first.toPath()));
+
+        // Тот же файл под другим именем - ключ по содержимому, конвертер не вызывается
+        File renamed = write("act-copy.xls", "содержимое BIFF5");
+        File second = ConversionCache.convert(renamed, cache);
+        assertEquals(1, conversions.get());
+        assertEquals(first, second);
+
+        // Другое содержимое конвертируется заново
+        ConversionCache.convert(write("other.xls", "другой акт"), cache);
+        assertEquals(2, conversions.get());
+
+        assertNoWorkDirectories(cache);
+    }
+
+    @Test
+    void failedConversionLeavesNothingBehind() throws Exception {
+        ExcelConverter.setConverter((source, outputDir) -> {
+            Files.writeString(outputDir.toPath().resolve("partial.xlsx"), "обрыв");
+            throw new IOException("конвертер упал");
+        });
+        Path cache = Files.createDirectories(temp.resolve("cache"));
+        File source = write("act.xls", "содержимое BIFF5");
+
+        assertThrows(IOException.class, () -> ConversionCache.convert(source, cache));
+        try (Stream<Path> entries = Files.list(cache)) {
+            assertEquals(0, entries.count(), "В кэше не должно остаться ни результата, ни рабочей папки");
+        }
+    }
+
+    // Подставной конвертер: "результат конвертации" - копия исходного файла
+    private File copy(File source, File outputDir) throws IOException {
+        conversions.incrementAndGet();
+        Path result = outputDir.toPath().resolve(source.getName().replace(".xls", ".xlsx"));
+        Files.copy(source.toPath(), result);
+        return result.toFile();
+    }
+
+    private File write(String name, String content) throws IOException {
+        Path file = Files.createDirectories(temp.resolve("src")).resolve(name);
+        Files.writeString(file, content);
+        return file.toFile();
+    }
+
+    private static void assertNoWorkDirectories(Path cache) throws IOException {
+        try (Stream<Path> entries = Files.list(cache)) {
+            assertTrue(entries.noneMatch(Files::isDirectory), "Рабочие папки конвертаций должны быть удалены");
+        }
+    }
+}
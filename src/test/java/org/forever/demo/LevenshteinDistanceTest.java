@@ -0,0 +1,87 @@
+package org.forever.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Полосный расчет расстояния Левенштейна с порогом сверяется с прежним расчетом по полной матрице
+ * на случайных строках (зерно фиксировано, чтобы падение повторялось).
+ */
+class LevenshteinDistanceTest {
+
+    // Маленький алфавит, чтобы строки часто совпадали частично; кириллица - как в наименованиях товаров
+    private static final String ALPHABET = "абвгa b1.";
+
+    @Test
+    void boundedDistanceMatchesFullMatrix() {
+        Random random = new Random(20240501);
+        for (int i = 0; i < 50_000; i++) {
+            String s1 = randomString(random);
+            String s2 = random.nextInt(3) == 0 ? mutate(s1, random) : randomString(random);
+            int maxDistance = random.nextInt(8);
+
+            int expected = ExcelComparator.levenshteinDistanceFullMatrix(s1, s2);
+            assertEquals(Math.min(expected, maxDistance + 1), ExcelComparator.levenshteinDistance(s1, s2, maxDistance),
+                    () -> "\"" + s1 + "\" / \"" + s2 + "\", порог " + maxDistance);
+        }
+    }
+
+    @Test
+    void unboundedDistanceMatchesFullMatrix() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String s1 = randomString(random);
+            String s2 = randomString(random);
+            assertEquals(ExcelComparator.levenshteinDistanceFullMatrix(s1, s2), ExcelComparator.levenshteinDistance(s1, s2),
+                    () -> "\"" + s1 + "\" / \"" + s2 + "\"");
+        }
+    }
+
+    @Test
+    void longStringsReuseBuffers() {
+        // Строки длиннее начального буфера потока (64 символа)
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            String s1 = randomString(random, 60 + random.nextInt(200));
+            String s2 = mutate(s1, random);
+            int expected = ExcelComparator.levenshteinDistanceFullMatrix(s1, s2);
+            assertEquals(Math.min(expected, 3), ExcelComparator.levenshteinDistance(s1, s2, 2));
+            assertEquals(expected, ExcelComparator.levenshteinDistance(s1, s2));
+        }
+    }
+
+    private static String randomString(Random random) {
+        return randomString(random, random.nextInt(20));
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    // Несколько случайных вставок, удалений и замен
+    private static String mutate(String s, Random random) {
+        StringBuilder sb = new StringBuilder(s);
+        int edits = random.nextInt(5);
+        for (int i = 0; i < edits; i++) {
+            int at = sb.isEmpty() ? 0 : random.nextInt(sb.length());
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (random.nextInt(3)) {
+                case 0 -> sb.insert(at, c);
+                case 1 -> {
+                    if (!sb.isEmpty()) sb.deleteCharAt(at);
+                }
+                default -> {
+                    if (!sb.isEmpty()) sb.setCharAt(at, c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package org.forever.demo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пул LibreOffice с подставным soffice - скриптом, который ведет себя по имени исходного файла:
+ * hang - зависает, fail - завершается с ошибкой, остальные - создает XLSX в --outdir.
+ * Каждый запуск записывается в журнал: профиль слота для конвертаций и "version" для проверок.
+ */
+@DisabledOnOs(OS.WINDOWS)
+class OfficeConverterPoolTest {
+
+    private static final String FAKE_SOFFICE = """
+            #!/bin/sh
+            dir=$(dirname "$0")
+            if [ "$1" = "--version" ]; then
+                echo version >> "$dir/runs.log"
+                [ -f "$dir/broken" ] && exit 1
+                exit 0
+            fi
+            profile=${1#-env:UserInstallation=file://}
+            profile=${profile%/}
+            mkdir -p "$profile"
+            echo "$profile" >> "$dir/runs.log"
+            while [ $# -gt 1 ]; do
+                [ "$1" = "--outdir" ] && outdir=$2
+                shift
+            done
+            name=$(basename "$1")
+            case "$name" in
+                hang*) sleep 60 ;;
+                fail*) exit 3 ;;
+            esac
+            cp "$1" "$outdir/${name%.*}.xlsx"
+            """;
+
+    @TempDir
+    Path temp;
+
+    private Path soffice;
+    private Path outputDir;
+
+    @BeforeEach
+    void writeFakeSoffice() throws IOException {
+        soffice = temp.resolve("soffice");
+        Files.writeString(soffice, FAKE_SOFFICE);
+        Files.setPosixFilePermissions(soffice, PosixFilePermissions.fromString("rwx------"));
+        outputDir = Files.createDirectories(temp.resolve("out"));
+    }
+
+    @Test
+    void conversionsReuseSlotProfile() throws Exception {
+        OfficeConverterPool pool = pool(1, Duration.ofSeconds(30));
+
+        File first = pool.convertToXlsx(source("first.xls"), outputDir.toFile());
+        File second = pool.convertToXlsx(source("second.xls"), outputDir.toFile());
+
+        assertEquals("first.xls", Files.readString(first.toPath()));
+        assertEquals("second.xls", Files.readString(second.toPath()));
+        List<String> runs = runs();
+        assertEquals(2, runs.size());
+        assertEquals(runs.get(0), runs.get(1), "обе конвертации в одном слоте с одним профилем");
+    }
+
+    @Test
+    void hungConversionIsKilledAndProfileReset() throws Exception {
+        OfficeConverterPool pool = pool(1, Duration.ofSeconds(1));
+
+        long start = System.nanoTime();
+        assertThrows(TimeoutException.class, () -> pool.convertToXlsx(source("hang.xls"), outputDir.toFile()));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(20).toNanos());
+        assertFalse(Files.exists(Path.of(runs().getFirst())), "профиль прерванного процесса удален");
+
+        // Слот вернулся в пул и работает дальше
+        assertTrue(pool.convertToXlsx(source("next.xls"), outputDir.toFile()).isFile());
+    }
+
+    @Test
+    void repeatedFailuresResetProfileAndCheckHealth() throws Exception {
+        OfficeConverterPool pool = pool(1, Duration.ofSeconds(30));
+
+        pool.convertToXlsx(source("ok.xls"), outputDir.toFile());
+        Path profile = Path.of(runs().getFirst());
+        assertThrows(IOException.class, () -> pool.convertToXlsx(source("fail-1.xls"), outputDir.toFile()));
+        assertTrue(Files.isDirectory(profile));
+        assertThrows(IOException.class, () -> pool.convertToXlsx(source("fail-2.xls"), outputDir.toFile()));
+
+        assertFalse(Files.exists(profile), "после неудач подряд профиль слота удален");
+        assertEquals("version", runs().getLast(), "после неудач подряд soffice проверен");
+        assertTrue(pool.convertToXlsx(source("ok-again.xls"), outputDir.toFile()).isFile());
+    }
+
+    @Test
+    void brokenSofficeFailsFast() throws Exception {
+        OfficeConverterPool pool = pool(1, Duration.ofSeconds(30));
+        Files.createFile(temp.resolve("broken"));
+
+        assertThrows(IOException.class, () -> pool.convertToXlsx(source("fail-1.xls"), outputDir.toFile()));
+        assertThrows(IOException.class, () -> pool.convertToXlsx(source("fail-2.xls"), outputDir.toFile()));
+
+        // Проверка не прошла: следующий файл не конвертируется, только снова проверяется soffice
+        int runsBefore = runs().size();
+        assertThrows(IOException.class, () -> pool.convertToXlsx(source("ok.xls"), outputDir.toFile()));
+        assertEquals(List.of("version"), runs().subList(runsBefore, runs().size()));
+        assertFalse(new File(outputDir.toFile(), "ok.xlsx").exists());
+
+        // soffice исправлен - слот снова работает
+        Files.delete(temp.resolve("broken"));
+        assertTrue(pool.convertToXlsx(source("ok.xls"), outputDir.toFile()).isFile());
+    }
+
+    private OfficeConverterPool pool(int slots, Duration timeout) {
+        return new OfficeConverterPool(soffice, slots, timeout, temp.resolve("profiles"));
+    }
+
+    // Исходный файл с собственным именем в качестве содержимого
+    private File source(String name) throws IOException {
+        Path file = Files.createDirectories(temp.resolve("in")).resolve(name);
+        Files.writeString(file, name);
+        return file.toFile();
+    }
+
+    private List<String> runs() throws IOException {
+        Path log = temp.resolve("runs.log");
+        return Files.exists(log) ? Files.readAllLines(log) : List.of();
+    }
+}
@@ -0,0 +1,43 @@
+package org.forever.demo;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.forever.demo.ActFixtures.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Потоковое чтение дает те же строки акта, что и разбор полностью загруженной книги.
+ * Проверяются все акты из ActFixtures в каждом формате; acts/biff5 - те же акты, что acts/*.xls,
+ * записанные в Excel 5.0/7.0, и сравниваются с разбором книги BIFF8.
+ */
+class StreamingReaderTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"debit-credit", "prihod-rashod", "prihod-rashod-balance", "ais"})
+    void xlsx(String act) {
+        assertSameAsDom(act + ".xlsx");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"debit-credit", "prihod-rashod", "prihod-rashod-balance", "ais"})
+    void xls(String act) {
+        assertSameAsDom(act + ".xls");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"debit-credit", "prihod-rashod", "prihod-rashod-balance", "ais"})
+    void biff5(String act) throws IOException {
+        String name = act + ".xls";
+        File biff5 = fixture("biff5/" + name);
+        assertEquals(ExcelFormat.BIFF5, ExcelFormat.detect(biff5));
+        assertSameTable(parseDom(fixture(name)), parseStreaming(biff5), name);
+    }
+
+    private static void assertSameAsDom(String name) {
+        assertSameTable(parseDom(fixture(name)), parseStreaming(fixture(name)), name);
+    }
+}